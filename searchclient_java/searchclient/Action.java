@@ -71,4 +71,38 @@ public enum Action
         this.boxRowDelta = brd; 
         this.boxColDelta = bcd;  
     }
+
+    // The action that undoes this one: a move is undone by moving back, a push by pulling the box back and a pull by
+    // pushing it back.
+    public Action inverse()
+    {
+        return INVERSES[this.ordinal()];
+    }
+
+    private static final Action[] INVERSES = new Action[Action.values().length];
+
+    static
+    {
+        for (Action action : Action.values()) {
+            INVERSES[action.ordinal()] = action.findInverse();
+        }
+    }
+
+    private Action findInverse()
+    {
+        ActionType inverseType = this.type;
+        if (this.type == ActionType.Push) {
+            inverseType = ActionType.Pull;
+        } else if (this.type == ActionType.Pull) {
+            inverseType = ActionType.Push;
+        }
+        for (Action action : Action.values()) {
+            if (action.type == inverseType && action.agentRowDelta == -this.agentRowDelta
+                    && action.agentColDelta == -this.agentColDelta && action.boxRowDelta == -this.boxRowDelta
+                    && action.boxColDelta == -this.boxColDelta) {
+                return action;
+            }
+        }
+        throw new IllegalStateException("No inverse of " + this.name);
+    }
 }
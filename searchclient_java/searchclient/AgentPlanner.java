@@ -0,0 +1,278 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Plans the agents of a multi-agent level one at a time, each in a projection of the level in which the other agents
+// and the boxes they move are parked on a wall cell, where the applicability checks never look. Boxes are moved by the
+// first agent of their color, so where agents share a color only that one delivers them; boxes no agent can move stay
+// where they are, as obstacles for everyone. Plans avoid the cells reserved for others in a ReservationTable, with a
+// time-indexed A*.
+public class AgentPlanner {
+    public final Level level;
+    public final State initialState;
+    private final int[] letterOwner; // Agent moving the boxes of each letter, -1 if none can
+    private final int[][] ownedBoxes; // Indices of the boxes each agent moves
+    private final State[] projections; // Root of each agent's search
+    private final Heuristic[] heuristics;
+
+    public AgentPlanner(State initialState) {
+        this.level = State.level;
+        this.initialState = initialState;
+        int numAgents = this.level.numAgents;
+        this.letterOwner = new int[26];
+        Arrays.fill(this.letterOwner, -1);
+        for (int l = 0; l < 26; l++) {
+            for (int agent = numAgents - 1; agent >= 0; agent--) {
+                if (this.level.agentColors[agent] == this.level.boxColors[l]) {
+                    this.letterOwner[l] = agent;
+                }
+            }
+        }
+
+        this.ownedBoxes = new int[numAgents][];
+        this.projections = new State[numAgents];
+        this.heuristics = new Heuristic[numAgents];
+        for (int agent = 0; agent < numAgents; agent++) {
+            int owned = 0;
+            for (int b = 0; b < this.level.numBoxes; b++) {
+                owned += this.owner(this.level.boxLetters[b]) == agent ? 1 : 0;
+            }
+            this.ownedBoxes[agent] = new int[owned];
+            for (int b = 0; b < this.level.numBoxes; b++) {
+                if (this.owner(this.level.boxLetters[b]) == agent) {
+                    this.ownedBoxes[agent][--owned] = b;
+                }
+            }
+            this.projections[agent] = this.projection(new int[] { agent });
+            this.heuristics[agent] = new AgentHeuristic(this.projections[agent], agent);
+        }
+    }
+
+    // The initial state with the agents not in agents, and the boxes they move, parked on a wall cell.
+    State projection(int[] agents) {
+        int parked = AgentPlanner.parkingCell(this.level);
+        boolean[] kept = new boolean[this.level.numAgents];
+        for (int agent : agents) {
+            kept[agent] = true;
+        }
+        short[] cells = this.initialState.cells.clone();
+        for (int other = 0; other < this.level.numAgents; other++) {
+            if (!kept[other]) {
+                cells[other] = (short) parked;
+            }
+        }
+        // Boxes are owned by letter, so whole letter groups are parked and each group stays sorted
+        for (int b = 0; b < this.level.numBoxes; b++) {
+            int owner = this.owner(this.level.boxLetters[b]);
+            if (owner >= 0 && !kept[owner]) {
+                cells[this.level.numAgents + b] = (short) parked;
+            }
+        }
+        State projection = new State(cells);
+        projection.currentAgentIndex = agents[0];
+        return projection;
+    }
+
+    // Whether level is supported, printing the reason if it is not.
+    public static boolean supports(Level level) {
+        if (AgentPlanner.parkingCell(level) < 0) {
+            System.err.println("Planning agents separately needs a wall cell to park agents and boxes on.");
+            return false;
+        }
+        return true;
+    }
+
+    private static int parkingCell(Level level) {
+        for (int cell = 0; cell < level.rows * level.cols; cell++) {
+            if (level.walls[level.row(cell)][level.col(cell)]) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    // The agent that moves boxes of letter, or -1 if none can.
+    public int owner(char letter) {
+        return this.letterOwner[letter - 'A'];
+    }
+
+    // Time-indexed A* for agent in its projection, from time 0, keeping its agent and boxes off the cells reserved at
+    // each time. If strict is set, the agent also never moves onto a cell reserved at the time it sets out, nor off a
+    // cell reserved at the time it arrives, which the server rejects when the reservations are fixed plans; otherwise
+    // only the cells the agent's objects are on are checked. States are told apart by time up to the horizon of the
+    // reservations and only by their cells after it. Returns null if there is no plan.
+    public Action[] plan(int agent, ReservationTable reservations, boolean strict) {
+        int horizon = reservations.horizon();
+        State root = new State(this.projections[agent]);
+        root.currentAgentIndex = agent;
+        if (!this.isFree(root, 0, agent, reservations, false)) {
+            return null;
+        }
+        // The child is still the scratch state, which keeps the time of parent
+        ScratchState.Filter filter = (parent, action, child) ->
+                this.isFree(child, parent.g + 1, agent, reservations, false)
+                        && (!strict || this.admitsMove(parent, agent, action, reservations));
+        Frontier frontier = new FrontierBucket(this.heuristics[agent]);
+        StateSet seen = new StateSet(1024, false);
+        seen.add(AgentPlanner.key(root, horizon));
+        frontier.add(root);
+        int popped = 0;
+        while (!frontier.isEmpty()) {
+            State state = frontier.pop();
+            if ((++popped & 0xFFFF) == 0 && Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            if (this.reachedGoals(state, agent) && this.isFree(state, state.g, agent, reservations, true)) {
+                return state.extractPlanForCurrentAgent();
+            }
+            ArrayList<State> children = ScratchState.forThread().expand(state, agent, null, filter);
+            for (State child : children) {
+                if (seen.add(AgentPlanner.key(child, horizon))) {
+                    frontier.add(child);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long key(State state, int horizon) {
+        long fingerprint = state.fingerprint();
+        return state.g <= horizon ? fingerprint ^ (state.g + 1) * 0x9E3779B97F4A7C15L : fingerprint;
+    }
+
+    // Whether the agent and boxes of agent in state are on cells free at time, or, if fromThenOn is set, on cells that
+    // stay free from then on.
+    private boolean isFree(State state, int time, int agent, ReservationTable reservations, boolean fromThenOn) {
+        if (!this.isFree(state.agentCell(agent), time, reservations, fromThenOn)) {
+            return false;
+        }
+        for (int b : this.ownedBoxes[agent]) {
+            if (!this.isFree(state.boxCell(b), time, reservations, fromThenOn)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isFree(int cell, int time, ReservationTable reservations, boolean fromThenOn) {
+        return fromThenOn ? reservations.isFreeFrom(cell, time) : reservations.isFree(cell, time);
+    }
+
+    // Whether the cell agent moves something onto with action in parent is free when it sets out, and the cell it
+    // leaves is free when it arrives.
+    private boolean admitsMove(State parent, int agent, Action action, ReservationTable reservations) {
+        int from = parent.agentCell(agent);
+        int destination = from + this.level.agentDeltas[action.ordinal()];
+        int boxDelta = this.level.boxDeltas[action.ordinal()];
+        int entered;
+        int left;
+        switch (action.type) {
+            case Move:
+                entered = destination;
+                left = from;
+                break;
+            case Push:
+                entered = destination + boxDelta;
+                left = from;
+                break;
+            case Pull:
+                entered = destination;
+                left = from - boxDelta;
+                break;
+            default:
+                return true;
+        }
+        return reservations.isFree(entered, parent.g) && reservations.isFree(left, parent.g + 1);
+    }
+
+    // Reserves the cells of agent and its boxes at every step of plan, and from the end of plan on for good.
+    public void reserve(int agent, Action[] plan, ReservationTable reservations) {
+        ScratchState state = new ScratchState(this.projections[agent]);
+        for (int t = 0; t <= plan.length; t++) {
+            if (t == plan.length) {
+                reservations.reserveFrom(state.agentCell(agent), t);
+                for (int b : this.ownedBoxes[agent]) {
+                    reservations.reserveFrom(state.boxCell(b), t);
+                }
+                break;
+            }
+            reservations.reserve(state.agentCell(agent), t);
+            for (int b : this.ownedBoxes[agent]) {
+                reservations.reserve(state.boxCell(b), t);
+            }
+            state.applyAction(agent, plan[t]);
+        }
+    }
+
+    // Estimate of the actions agent still needs in state to reach its goals.
+    public int estimate(State state, int agent) {
+        return this.heuristics[agent].H(state);
+    }
+
+    // Whether agent is on its goal, if it has one, and every goal of a letter it moves has a box of that letter.
+    public boolean reachedGoals(State state, int agent) {
+        int agentGoal = this.level.agentGoalCells[agent];
+        if (agentGoal >= 0 && state.agentCell(agent) != agentGoal) {
+            return false;
+        }
+        for (int i = 0; i < this.level.boxGoalCells.length; i++) {
+            char letter = this.level.boxGoalLetters[i];
+            if (this.owner(letter) == agent && !state.hasBoxAt(letter, this.level.boxGoalCells[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Distance from the agent to its goal plus, for each goal of a letter it moves that has no box on it, the
+    // distance to the nearest box of that letter. Not admissible, as a push brings both closer at once, but the
+    // searches only have to find short plans.
+    private class AgentHeuristic
+            extends Heuristic {
+        private final int agent;
+
+        AgentHeuristic(State root, int agent) {
+            super(root);
+            this.agent = agent;
+        }
+
+        @Override
+        public int H(State s) {
+            int total = 0;
+            int agentGoal = level.agentGoalCells[this.agent];
+            if (agentGoal >= 0) {
+                total += this.reachable(this.distances.distance(s.agentCell(this.agent), agentGoal));
+            }
+            for (int i = 0; i < level.boxGoalCells.length; i++) {
+                char letter = level.boxGoalLetters[i];
+                int goal = level.boxGoalCells[i];
+                if (owner(letter) != this.agent || s.hasBoxAt(letter, goal)) {
+                    continue;
+                }
+                int nearest = DistanceMap.UNREACHABLE;
+                for (int b : ownedBoxes[this.agent]) {
+                    if (level.boxLetters[b] == letter) {
+                        nearest = Math.min(nearest, this.distances.distance(s.boxCell(b), goal));
+                    }
+                }
+                total += this.reachable(nearest);
+            }
+            return total;
+        }
+
+        private int reachable(int distance) {
+            return distance == DistanceMap.UNREACHABLE ? 0 : distance;
+        }
+
+        @Override
+        protected int incrementalH(State parent, State child) {
+            return this.H(child);
+        }
+
+        @Override
+        public int f(State s) {
+            return s.g + this.h(s);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package searchclient;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Restarting weighted A*. A first plan is found quickly with weight w, then the search is repeated with weights
+// w - 1, ..., 1, each time only looking for plans shorter than the best so far, which prunes every state whose
+// g + h reaches that length. It stops after the weight 1 search or at the deadline, when the running search is
+// interrupted. The best plan found so far is kept and returned either way. A finished weight 1 search only proves the
+// last plan optimal if h never overestimates, which holds for the agent distances and for -hungarian, but not for the
+// greedy matching of -boxes, and only on single-agent levels, where the plan is not a combination of separate plans.
+public class AnytimeSearch {
+    private final int initialWeight;
+    private final long deadlineMillis; // Since the start of the JVM
+
+    private Action[][] best = null;
+    private boolean searching = false; // Whether the deadline may still interrupt the search thread, guarded by this
+
+    public AnytimeSearch(int initialWeight, double deadlineSeconds) {
+        this.initialWeight = Math.max(initialWeight, 1);
+        this.deadlineMillis = (long) (deadlineSeconds * 1000);
+    }
+
+    public Action[][] search(State initialState) {
+        Thread searcher = Thread.currentThread();
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "anytime-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long remaining = this.deadlineMillis - ManagementFactory.getRuntimeMXBean().getUptime();
+        synchronized (this) {
+            this.searching = true;
+        }
+        timer.schedule(() -> {
+            synchronized (this) {
+                if (this.searching) {
+                    System.err.println("Anytime: deadline reached.");
+                    searcher.interrupt();
+                }
+            }
+        }, Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+
+        boolean finished = false; // Whether the weight 1 search ran to the end
+        try {
+            for (int w = this.initialWeight; w >= 1 && !searcher.isInterrupted(); w--) {
+                int bound = this.best == null ? Integer.MAX_VALUE : this.best.length;
+                State root = new State(initialState);
+                Action[][] plan;
+                try {
+                    plan = SearchClient.search(root, SearchClient.bestFirst(SearchClient.heuristic(root, 1, w)), 0,
+                            bound);
+                } catch (OutOfMemoryError ex) {
+                    System.err.println("Anytime: maximum memory usage exceeded, keeping the best plan.");
+                    break;
+                }
+                if (plan != null && plan.length < bound) {
+                    this.best = plan;
+                    System.err.format("Anytime: plan of length %,d with weight %d after %.3f s.\n", plan.length, w,
+                            ManagementFactory.getRuntimeMXBean().getUptime() / 1000d);
+                } else if (!searcher.isInterrupted()) {
+                    System.err.format("Anytime: no shorter plan with weight %d.\n", w);
+                }
+                finished = w == 1 && !searcher.isInterrupted();
+            }
+        } finally {
+            synchronized (this) {
+                this.searching = false;
+            }
+            timer.shutdownNow();
+            Thread.interrupted(); // Clear an interrupt from the deadline, the plan still has to be sent
+        }
+        if (finished && this.best != null) {
+            if (AnytimeSearch.provesOptimal()) {
+                System.err.format("Anytime: the plan of length %,d is optimal.\n", this.best.length);
+            } else {
+                System.err.format("Anytime: the plan of length %,d is the shortest found, but not proved optimal.\n",
+                        this.best.length);
+            }
+        }
+        return this.best;
+    }
+
+    // Whether a finished weight 1 search proves its plan optimal, see above.
+    private static boolean provesOptimal() {
+        return State.level.numAgents == 1 && (!SearchClient.boxHeuristic || SearchClient.exactBoxMatching);
+    }
+}
@@ -0,0 +1,405 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Solves every level in a directory without the server, and writes a report of the results. Each level is solved by
+// a JVM of its own, started from the same class path, since the level and the search options are static and one run
+// must not leak into the next; this also gives each level a heap limit of its own. The child parses the .lvl file,
+// solves it with the client arguments given after --, replays the plan to validate it, and prints a single result
+// line, which the parent collects. Children that outlive their time limit are killed. The batch fails, with exit
+// status 1, if any plan is invalid, if a level listed in the -expect file is not solved, or if a level solved in the
+// -lengths report is solved with a plan of another length. For example:
+//     $ java searchclient.BatchRunner -levels=../levels -time=60 -memory=2048 -threads=2 -report=report.csv -- -greedy
+public class BatchRunner {
+    private static final String RESULT = "BatchRunner result:"; // Prefix of the result line a child prints
+    private static final long GRACE_MILLIS = 2000; // Time a search has to stop after its time limit
+
+    private File levels = new File("../levels");
+    private double time = 180; // Seconds per level
+    private int memory = 4096; // Maximum heap per level, in megabytes
+    private int threads = 1;
+    private File report = new File("report.csv");
+    private File logs = null; // Directory for the children's standard error, or null to discard it
+    private File expect = null; // Levels that must be solved, or null
+    private File lengths = null; // Report of the plan lengths solved levels must have, or null
+    private String[] clientArgs = new String[0];
+
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        int split = Arrays.asList(args).indexOf("--");
+        String[] clientArgs = split < 0 ? new String[0] : Arrays.copyOfRange(args, split + 1, args.length);
+        String[] runnerArgs = split < 0 ? args : Arrays.copyOf(args, split);
+        if (runnerArgs.length >= 2 && runnerArgs[0].equals("-worker")) {
+            BatchRunner.work(new File(runnerArgs[1]), runnerArgs, clientArgs);
+            return;
+        }
+
+        BatchRunner runner = new BatchRunner();
+        runner.clientArgs = clientArgs;
+        for (String arg : runnerArgs) {
+            String lower = arg.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("-levels=")) {
+                runner.levels = new File(arg.substring("-levels=".length()));
+            } else if (lower.startsWith("-time=")) {
+                runner.time = Double.parseDouble(arg.substring("-time=".length()));
+            } else if (lower.startsWith("-memory=")) {
+                runner.memory = Integer.parseInt(arg.substring("-memory=".length()));
+            } else if (lower.startsWith("-threads=")) {
+                runner.threads = Math.max(Integer.parseInt(arg.substring("-threads=".length())), 1);
+            } else if (lower.startsWith("-report=")) {
+                runner.report = new File(arg.substring("-report=".length()));
+            } else if (lower.startsWith("-logs=")) {
+                runner.logs = new File(arg.substring("-logs=".length()));
+            } else if (lower.startsWith("-expect=")) {
+                runner.expect = new File(arg.substring("-expect=".length()));
+            } else if (lower.startsWith("-lengths=")) {
+                runner.lengths = new File(arg.substring("-lengths=".length()));
+            } else {
+                System.err.println("Unknown argument " + arg + ". Use -levels=<dir or file>, -time=<seconds>, " +
+                        "-memory=<MB>, -threads=<n>, -report=<file.csv or file.json>, -logs=<dir>, " +
+                        "-expect=<file>, -lengths=<file.csv>, and give the client's arguments after --.");
+                System.exit(1);
+            }
+        }
+        if (!runner.run()) {
+            System.exit(1);
+        }
+    }
+
+    // Solves every level, writes the report, and checks the results. Returns false if any plan was invalid, if a
+    // level that was run and is expected to be solved was not, or if a solved level has a plan of another length than
+    // in the -lengths report.
+    private boolean run()
+            throws IOException, InterruptedException {
+        File[] files;
+        if (this.levels.isDirectory()) {
+            files = this.levels.listFiles((dir, name) -> name.endsWith(".lvl"));
+            if (files == null) {
+                throw new IOException("Cannot list " + this.levels);
+            }
+            Arrays.sort(files);
+        } else {
+            files = new File[] { this.levels };
+        }
+        if (this.logs != null && !this.logs.isDirectory() && !this.logs.mkdirs()) {
+            throw new IOException("Cannot create " + this.logs);
+        }
+        System.err.format("Solving %d levels with %s, %.0f s and %d MB each, %d at a time.\n", files.length,
+                String.join(" ", this.clientArgs), this.time, this.memory, this.threads);
+
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        ArrayList<Future<Result>> futures = new ArrayList<>();
+        for (File file : files) {
+            futures.add(pool.submit(() -> this.solve(file)));
+        }
+        pool.shutdown();
+        ArrayList<Result> results = new ArrayList<>();
+        int solved = 0;
+        for (Future<Result> future : futures) {
+            Result result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+            results.add(result);
+            if (result.status.equals("solved")) {
+                solved++;
+            }
+            System.err.format("%-32s %-8s %6d %,14d %,14d %9.3f s %8.1f MB\n", result.level, result.status,
+                    result.length, result.expanded, result.generated, result.time, result.memory / 1048576d);
+        }
+        System.err.format("Solved %d of %d levels.\n", solved, files.length);
+
+        try (PrintWriter out = new PrintWriter(this.report, StandardCharsets.UTF_8)) {
+            if (this.report.getName().toLowerCase(Locale.ROOT).endsWith(".json")) {
+                BatchRunner.writeJson(out, results);
+            } else {
+                BatchRunner.writeCsv(out, results);
+            }
+        }
+        System.err.println("Report written to " + this.report + ".");
+
+        // An invalid plan is a bug in the client rather than a level too hard for it, so it always fails the batch
+        HashSet<String> expected = this.expect == null ? new HashSet<>() : BatchRunner.readExpected(this.expect);
+        HashMap<String, Integer> lengths = this.lengths == null ? new HashMap<>()
+                : BatchRunner.readLengths(this.lengths);
+        ArrayList<String> failures = new ArrayList<>();
+        for (Result result : results) {
+            if (result.status.equals("invalid")) {
+                failures.add(result.level + " (invalid plan)");
+            } else if (expected.contains(result.level) && !result.status.equals("solved")) {
+                failures.add(result.level + " (expected solved, " + result.status + ")");
+            } else if (result.status.equals("solved") && lengths.containsKey(result.level)
+                    && lengths.get(result.level) != result.length) {
+                failures.add(result.level + " (length " + result.length + ", expected " + lengths.get(result.level) +
+                        ")");
+            }
+        }
+        if (!failures.isEmpty()) {
+            System.err.println("FAILED: " + String.join(", ", failures));
+            return false;
+        }
+        return true;
+    }
+
+    // Reads the names of the levels that must be solved from file, which either lists them one per line, with or
+    // without .lvl, or is a CSV report of an earlier batch, whose solved levels are taken.
+    private static HashSet<String> readExpected(File file)
+            throws IOException {
+        HashSet<String> levels = new HashSet<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            String[] fields = line.strip().split(",");
+            if (fields[0].isEmpty() || fields[0].startsWith("#")) {
+                continue;
+            }
+            if (fields.length > 1 && !fields[1].equals("solved")) {
+                continue; // A report row of a level that was not solved, or the header
+            }
+            levels.add(fields[0].endsWith(".lvl") ? fields[0] : fields[0] + ".lvl");
+        }
+        return levels;
+    }
+
+    // Reads the plan length of each solved level from file, a CSV report of an earlier batch.
+    private static HashMap<String, Integer> readLengths(File file)
+            throws IOException {
+        HashMap<String, Integer> lengths = new HashMap<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            String[] fields = line.strip().split(",");
+            if (fields.length > 2 && fields[1].equals("solved")) {
+                lengths.put(fields[0], Integer.parseInt(fields[2]));
+            }
+        }
+        return lengths;
+    }
+
+    // Solves file in a child JVM, and returns the result line it printed, or a result with status killed if it had
+    // to be killed, or error if it printed none.
+    private Result solve(File file)
+            throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ArrayList<String> command = new ArrayList<>(List.of(java, "-Xmx" + this.memory + "m", "-cp",
+                System.getProperty("java.class.path"), BatchRunner.class.getName(), "-worker", file.getPath(),
+                "-time=" + this.time, "--"));
+        command.addAll(List.of(this.clientArgs));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        if (this.logs != null) {
+            builder.redirectError(new File(this.logs, file.getName().replaceFirst("\\.lvl$", "") + ".log"));
+        } else {
+            builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+        }
+        Process process = builder.start();
+        process.getOutputStream().close();
+
+        Result result = new Result(file.getName());
+        if (!process.waitFor((long) (this.time * 1000) + 2 * GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly().waitFor();
+            result.status = "killed";
+            result.time = this.time;
+            return result;
+        }
+        // The child prints only its result line, so it never fills the pipe before exiting.
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.US_ASCII))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.startsWith(RESULT)) {
+                    result.parse(line.substring(RESULT.length()).strip());
+                }
+            }
+        }
+        return result;
+    }
+
+    // Runs in the child: solves level within the time limit in runnerArgs, validates the plan, prints the result
+    // line and exits.
+    private static void work(File level, String[] runnerArgs, String[] clientArgs)
+            throws InterruptedException {
+        double time = 180;
+        for (String arg : runnerArgs) {
+            if (arg.toLowerCase(Locale.ROOT).startsWith("-time=")) {
+                time = Double.parseDouble(arg.substring("-time=".length()));
+            }
+        }
+        Result result = new Result(level.getName());
+        State initialState;
+        try {
+            initialState = LevelParser.parse(level);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.out.println(RESULT + " " + result);
+            System.exit(1);
+            return;
+        }
+
+        Action[][][] plan = new Action[1][][];
+        Throwable[] failure = new Throwable[1];
+        Thread searcher = new Thread(() -> {
+            try {
+                plan[0] = SearchClient.solve(initialState, clientArgs);
+            } catch (OutOfMemoryError e) {
+                plan[0] = null; // Let go of what is left of the search before reporting
+                failure[0] = e;
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "searcher");
+        searcher.setDaemon(true);
+        long start = System.nanoTime();
+        searcher.start();
+        searcher.join((long) (time * 1000));
+        boolean timedOut = searcher.isAlive();
+        if (timedOut) {
+            searcher.interrupt();
+            searcher.join(GRACE_MILLIS);
+        }
+        result.time = (System.nanoTime() - start) / 1_000_000_000d;
+
+        if (failure[0] instanceof OutOfMemoryError) {
+            result.status = "memory";
+        } else if (failure[0] != null) {
+            failure[0].printStackTrace();
+        } else if (timedOut) {
+            result.status = "timeout";
+        } else if (plan[0] == null) {
+            result.status = "unsolved";
+        } else {
+            String error = BatchRunner.validate(initialState, plan[0]);
+            if (error == null) {
+                result.status = "solved";
+            } else {
+                System.err.println("Invalid plan: " + error);
+                result.status = "invalid";
+            }
+            result.length = plan[0].length;
+        }
+        result.expanded = ScratchState.expanded.sum();
+        result.generated = ScratchState.generated.sum();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                result.memory += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.println(RESULT + " " + result);
+        System.out.flush();
+        System.exit(0); // Without waiting for a search that ignored the interrupt
+    }
+
+    // Replays plan from initialState as the server would, and returns why it is invalid, or null if it is valid: every
+    // action must be applicable in the state its joint action starts from, no two agents may move into the same cell
+    // or move the same box, and the last state must satisfy every goal.
+    static String validate(State initialState, Action[][] plan) {
+        Level level = State.level;
+        State state = initialState;
+        for (int step = 0; step < plan.length; step++) {
+            Action[] jointAction = plan[step];
+            if (jointAction.length != level.numAgents) {
+                return String.format("step %d has %d actions for %d agents", step, jointAction.length,
+                        level.numAgents);
+            }
+            for (int agent = 0; agent < level.numAgents; agent++) {
+                Action action = jointAction[agent];
+                if (!state.isApplicable(agent, action)) {
+                    return String.format("step %d: %s is not applicable for agent %d", step, action.name, agent);
+                }
+                for (int other = 0; other < agent; other++) {
+                    if (state.collides(agent, action, other, jointAction[other])) {
+                        return String.format("step %d: agents %d and %d move into the same cell or move the same box",
+                                step, other, agent);
+                    }
+                }
+            }
+            for (int agent = 0; agent < level.numAgents; agent++) {
+                state = new State(state, jointAction[agent], agent);
+            }
+            state = new State(state); // Drop the per-agent states
+        }
+        for (int agent = 0; agent < level.numAgents; agent++) {
+            int goal = level.agentGoalCells[agent];
+            if (goal >= 0 && state.agentCell(agent) != goal) {
+                return String.format("agent %d is not on its goal", agent);
+            }
+        }
+        for (int i = 0; i < level.boxGoalCells.length; i++) {
+            if (!state.hasBoxAt(level.boxGoalLetters[i], level.boxGoalCells[i])) {
+                return String.format("goal %c at (%d, %d) has no box", level.boxGoalLetters[i],
+                        level.boxGoalCells[i] / level.cols, level.boxGoalCells[i] % level.cols);
+            }
+        }
+        return null;
+    }
+
+    private static void writeCsv(PrintWriter out, List<Result> results) {
+        out.println("level,status,length,expanded,generated,time,memory");
+        for (Result result : results) {
+            out.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.3f,%d\n", result.level, result.status, result.length,
+                    result.expanded, result.generated, result.time, result.memory);
+        }
+    }
+
+    private static void writeJson(PrintWriter out, List<Result> results) {
+        out.println("[");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            out.format(Locale.ROOT, "  {\"level\": \"%s\", \"status\": \"%s\", \"length\": %d, \"expanded\": %d, " +
+                    "\"generated\": %d, \"time\": %.3f, \"memory\": %d}%s\n", result.level, result.status,
+                    result.length, result.expanded, result.generated, result.time, result.memory,
+                    i + 1 < results.size() ? "," : "");
+        }
+        out.println("]");
+    }
+
+    // The outcome of one level. status is solved, unsolved (the search gave up), timeout, memory, invalid (the plan
+    // failed validation), killed (the child had to be killed) or error. time is in seconds, memory is the peak heap
+    // use in bytes, and length is 0 unless a plan was found.
+    private static class Result {
+        final String level;
+        String status = "error";
+        int length = 0;
+        long expanded = 0;
+        long generated = 0;
+        double time = 0;
+        long memory = 0;
+
+        Result(String level) {
+            this.level = level;
+        }
+
+        void parse(String line) {
+            String[] fields = line.split(" ");
+            this.status = fields[0];
+            this.length = Integer.parseInt(fields[1]);
+            this.expanded = Long.parseLong(fields[2]);
+            this.generated = Long.parseLong(fields[3]);
+            this.time = Double.parseDouble(fields[4]);
+            this.memory = Long.parseLong(fields[5]);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %d %d %d %.3f %d", this.status, this.length, this.expanded,
+                    this.generated, this.time, this.memory);
+        }
+    }
+}
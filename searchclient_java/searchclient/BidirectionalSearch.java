@@ -0,0 +1,144 @@
+package searchclient;
+
+import java.util.ArrayList;
+
+// Bidirectional breadth-first search for single-agent levels whose goal is fully specified, that is, where the agent's
+// boxes of each letter are exactly as many as the goals of that letter. Every move, push and pull can be undone by
+// another action (see Action.inverse), so the predecessors of a state are its successors, and the backward search
+// expands ordinary states forwards from the goal states: the boxes on their goals and the agent on its goal, or on
+// any free cell if it has none. The two searches take turns expanding a whole layer, always the smaller one, and
+// stop at the end of the first layer in which they meet, which gives a shortest plan.
+public class BidirectionalSearch {
+    // Whether level is supported, printing the reason if it is not.
+    public static boolean supports(Level level) {
+        if (level.numAgents != 1) {
+            System.err.println("Bidirectional search needs a single-agent level.");
+            return false;
+        }
+        for (int l = 0; l < 26; l++) {
+            if (level.boxColors[l] != level.agentColors[0]) {
+                continue;
+            }
+            char letter = (char) ('A' + l);
+            int boxes = 0;
+            for (char boxLetter : level.boxLetters) {
+                boxes += boxLetter == letter ? 1 : 0;
+            }
+            int goals = 0;
+            for (char goalLetter : level.boxGoalLetters) {
+                goals += goalLetter == letter ? 1 : 0;
+            }
+            if (boxes != goals) {
+                System.err.format("Bidirectional search needs as many %c boxes as %c goals.\n", letter, letter);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The goal states: boxes of the agent's color on the goals of their letter, other boxes where they are in
+    // initialState, and the agent on its goal or on every free cell.
+    private static ArrayList<State> goalStates(State initialState) {
+        Level level = State.level;
+        short[] cells = initialState.cells.clone();
+        for (int b = 0; b < level.numBoxes; ) {
+            char letter = level.boxLetters[b];
+            if (level.boxColors[letter - 'A'] == level.agentColors[0]) {
+                // Goal cells are collected in row-major order, so they are already ascending
+                for (int i = 0; i < level.boxGoalCells.length; i++) {
+                    if (level.boxGoalLetters[i] == letter) {
+                        cells[level.numAgents + b++] = (short) level.boxGoalCells[i];
+                    }
+                }
+            } else {
+                b = level.boxGroupEnd[b];
+            }
+        }
+
+        ArrayList<State> goals = new ArrayList<>();
+        State boxesPlaced = new State(cells);
+        for (int cell = 0; cell < level.rows * level.cols; cell++) {
+            if (level.agentGoalCells[0] >= 0 && cell != level.agentGoalCells[0]) {
+                continue;
+            }
+            if (!level.walls[level.row(cell)][level.col(cell)] && boxesPlaced.boxIndexAt(cell) < 0) {
+                short[] goalCells = cells.clone();
+                goalCells[0] = (short) cell;
+                goals.add(new State(goalCells));
+            }
+        }
+        return goals;
+    }
+
+    public Action[][] search(State initialState) {
+        ArrayList<State> forwardLayer = new ArrayList<>();
+        forwardLayer.add(initialState);
+        StateSet forwardSeen = new StateSet(65536, true);
+        forwardSeen.add(initialState);
+        ArrayList<State> backwardLayer = BidirectionalSearch.goalStates(initialState);
+        StateSet backwardSeen = new StateSet(65536, true);
+        for (State goal : backwardLayer) {
+            backwardSeen.add(goal);
+        }
+        State meeting = backwardSeen.get(initialState);
+        if (meeting != null) {
+            return BidirectionalSearch.plan(initialState, meeting);
+        }
+
+        int expanded = 0;
+        while (!forwardLayer.isEmpty() && !backwardLayer.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            boolean forward = forwardLayer.size() <= backwardLayer.size();
+            StateSet seen = forward ? forwardSeen : backwardSeen;
+            StateSet other = forward ? backwardSeen : forwardSeen;
+            ArrayList<State> next = new ArrayList<>();
+            State bestHere = null;
+            State bestThere = null;
+            for (State state : forward ? forwardLayer : backwardLayer) {
+                if (++expanded % 10000 == 0) {
+                    System.err.format("#Expanded: %,8d, #Forward: %,8d, #Backward: %,8d\n%s\n", expanded,
+                            forwardSeen.size(), backwardSeen.size(), Memory.stringRep());
+                }
+                for (State child : ScratchState.forThread().expand(state, 0, null)) {
+                    State match = other.get(child);
+                    if (match != null && (bestHere == null || child.g + match.g < bestHere.g + bestThere.g)) {
+                        bestHere = child;
+                        bestThere = match;
+                    }
+                    if (seen.add(child)) {
+                        next.add(child);
+                    }
+                }
+            }
+            if (bestHere != null) {
+                System.err.format("Searches met after %,d expansions, %,d forward and %,d backward states.\n",
+                        expanded, forwardSeen.size(), backwardSeen.size());
+                return forward ? BidirectionalSearch.plan(bestHere, bestThere)
+                        : BidirectionalSearch.plan(bestThere, bestHere);
+            }
+            if (forward) {
+                forwardLayer = next;
+            } else {
+                backwardLayer = next;
+            }
+        }
+        return null;
+    }
+
+    // Splices the plan from the forward search's root to meeting with the undone backward plan from meeting to a
+    // goal. forwardState and backwardState are the same state as reached by either search.
+    private static Action[][] plan(State forwardState, State backwardState) {
+        Action[] toMeeting = forwardState.extractPlanForCurrentAgent();
+        Action[][] plan = new Action[forwardState.g + backwardState.g][];
+        for (int i = 0; i < toMeeting.length; i++) {
+            plan[i] = new Action[] { toMeeting[i] };
+        }
+        int step = toMeeting.length;
+        for (State state = backwardState; state.parent != null; state = state.parent) {
+            plan[step++] = new Action[] { state.getLeadingAction().inverse() };
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,324 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Conflict-based search (CBS). Each agent is planned on its own by an AgentPlanner, in a projection of the level in
+// which the other agents and the boxes they move are parked out of the way. The plans are then simulated together, and
+// at the first conflict, where an agent moves something onto a cell that another agent occupies or enters at the same
+// time, the search branches on which of the two has to keep out of that cell at that time. Nodes of this constraint
+// tree are searched best-first on the sum of the plan lengths, and each replans only its constrained agent, with a
+// time-indexed A* that reads the agent's constraints from a ReservationTable. Low-level results are cached by agent and
+// constraints, as different branches often ask for the same plan again.
+public class ConflictBasedSearch {
+    // Cached result of a low-level search that found no plan, compared by identity
+    private static final Action[] NO_PLAN = new Action[0];
+
+    private final int batchSize; // Nodes expanded together, with their low-level searches in parallel
+    private final ConcurrentHashMap<LowLevelKey, Action[]> cache = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final LongAdder lowLevelSearches = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+
+    private Level level;
+    private State initialState;
+    private AgentPlanner planner;
+
+    public ConflictBasedSearch(int batchSize) {
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    public Action[][] search(State initialState) {
+        this.setUp(initialState);
+        long startTime = System.nanoTime();
+        Node root = new Node(null, -1, -1, -1, new Action[this.level.numAgents][]);
+        for (int agent = 0; agent < this.level.numAgents; agent++) {
+            root.plans[agent] = this.plan(agent, root.constraints(agent));
+            if (root.plans[agent] == NO_PLAN) {
+                System.err.format("CBS: agent %d cannot reach its goals on its own.\n", agent);
+                return null;
+            }
+        }
+        this.evaluate(root);
+
+        PriorityQueue<Node> open = new PriorityQueue<>();
+        open.add(root);
+        long expanded = 0;
+        ArrayList<Node> batch = new ArrayList<>(this.batchSize);
+        while (!open.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            // A node without conflicts is only accepted as the cheapest one left
+            batch.clear();
+            while (batch.size() < this.batchSize && !open.isEmpty()) {
+                Node node = open.poll();
+                if (node.conflict == null) {
+                    if (batch.isEmpty()) {
+                        this.printStatus(expanded, open.size(), startTime);
+                        System.err.format("CBS: plans of total length %,d without conflicts.\n", node.cost);
+                        return this.combine(node.plans);
+                    }
+                    open.add(node);
+                    break;
+                }
+                batch.add(node);
+            }
+
+            IntStream children = IntStream.range(0, 2 * batch.size());
+            if (this.batchSize > 1) {
+                children = children.parallel();
+            }
+            List<Node> nodes = children.mapToObj(i -> this.child(batch.get(i / 2), i % 2 == 0))
+                    .filter(node -> node != null)
+                    .collect(Collectors.toList());
+            open.addAll(nodes);
+            for (int i = 0; i < batch.size(); i++) {
+                if (++expanded % 1000 == 0) {
+                    this.printStatus(expanded, open.size(), startTime);
+                }
+            }
+        }
+        this.printStatus(expanded, 0, startTime);
+        return null;
+    }
+
+    private void setUp(State initialState) {
+        this.level = State.level;
+        this.initialState = initialState;
+        this.planner = new AgentPlanner(initialState);
+    }
+
+    // The node with parent's constraints plus one side of its conflict, or null if that agent then has no plan.
+    private Node child(Node parent, boolean first) {
+        Conflict conflict = parent.conflict;
+        int agent = first ? conflict.agent1 : conflict.agent2;
+        int time = first ? conflict.time1 : conflict.time2;
+        Node node = new Node(parent, agent, conflict.cell, time, parent.plans.clone());
+        Action[] plan = this.plan(agent, node.constraints(agent));
+        if (plan == NO_PLAN) {
+            return null;
+        }
+        node.plans[agent] = plan;
+        this.evaluate(node);
+        return node;
+    }
+
+    private Action[] plan(int agent, long[] constraints) {
+        LowLevelKey key = new LowLevelKey(agent, constraints);
+        Action[] plan = this.cache.get(key);
+        if (plan != null) {
+            this.cacheHits.increment();
+            return plan;
+        }
+        this.lowLevelSearches.increment();
+        ReservationTable reservations = new ReservationTable(this.level.rows * this.level.cols);
+        for (long constraint : constraints) {
+            reservations.reserve((int) constraint, (int) (constraint >>> 32));
+        }
+        plan = this.planner.plan(agent, reservations, false);
+        plan = plan == null ? NO_PLAN : plan;
+        this.cache.put(key, plan);
+        return plan;
+    }
+
+    // Simulates the plans of node together from the initial state, and records the first conflict and the number of
+    // conflicts. After the first one the simulation is only approximate, which is good enough for a tie-breaker.
+    private void evaluate(Node node) {
+        int numAgents = this.level.numAgents;
+        int length = 0;
+        node.cost = 0;
+        for (Action[] plan : node.plans) {
+            length = Math.max(length, plan.length);
+            node.cost += plan.length;
+        }
+        // Agent owning the agent or box on each cell, plus 1, or 0 for free cells and boxes no agent can move
+        int[] occupant = new int[this.level.rows * this.level.cols];
+        int[] agentCells = new int[numAgents];
+        for (int agent = 0; agent < numAgents; agent++) {
+            agentCells[agent] = this.initialState.agentCell(agent);
+            occupant[agentCells[agent]] = agent + 1;
+        }
+        for (int b = 0; b < this.level.numBoxes; b++) {
+            int owner = this.planner.owner(this.level.boxLetters[b]);
+            if (owner >= 0) {
+                occupant[this.initialState.boxCell(b)] = owner + 1;
+            }
+        }
+
+        int[] targets = new int[numAgents]; // Cell each agent moves its agent or box onto, or -1
+        for (int t = 0; t < length; t++) {
+            for (int agent = 0; agent < numAgents; agent++) {
+                Action action = t < node.plans[agent].length ? node.plans[agent][t] : Action.NoOp;
+                int destination = agentCells[agent] + this.level.agentDeltas[action.ordinal()];
+                switch (action.type) {
+                    case Move:
+                    case Pull:
+                        targets[agent] = destination;
+                        break;
+                    case Push:
+                        targets[agent] = destination + this.level.boxDeltas[action.ordinal()];
+                        break;
+                    default:
+                        targets[agent] = -1;
+                }
+                if (targets[agent] >= 0 && occupant[targets[agent]] != 0 && occupant[targets[agent]] != agent + 1) {
+                    node.addConflict(agent, t + 1, occupant[targets[agent]] - 1, t, targets[agent]);
+                }
+                for (int other = 0; other < agent; other++) {
+                    if (targets[agent] >= 0 && targets[other] == targets[agent]) {
+                        node.addConflict(agent, t + 1, other, t + 1, targets[agent]);
+                    }
+                }
+            }
+            for (int agent = 0; agent < numAgents; agent++) {
+                Action action = t < node.plans[agent].length ? node.plans[agent][t] : Action.NoOp;
+                int from = agentCells[agent];
+                int destination = from + this.level.agentDeltas[action.ordinal()];
+                switch (action.type) {
+                    case Move:
+                        occupant[from] = 0;
+                        break;
+                    case Push:
+                        occupant[from] = 0;
+                        occupant[destination + this.level.boxDeltas[action.ordinal()]] = agent + 1;
+                        break;
+                    case Pull:
+                        occupant[from - this.level.boxDeltas[action.ordinal()]] = 0;
+                        occupant[from] = agent + 1;
+                        break;
+                    default:
+                        continue;
+                }
+                occupant[destination] = agent + 1;
+                agentCells[agent] = destination;
+            }
+        }
+    }
+
+    private Action[][] combine(Action[][] plans) {
+        int length = 0;
+        for (Action[] plan : plans) {
+            length = Math.max(length, plan.length);
+        }
+        Action[][] combined = new Action[length][plans.length];
+        for (int t = 0; t < length; t++) {
+            for (int agent = 0; agent < plans.length; agent++) {
+                combined[t][agent] = t < plans[agent].length ? plans[agent][t] : Action.NoOp;
+            }
+        }
+        return combined;
+    }
+
+    private void printStatus(long expanded, int open, long startTime) {
+        System.err.format("#CT nodes: %,8d, #Open: %,8d, #Low-level searches: %,8d, #Cache hits: %,8d, "
+                + "Time: %3.3f s\n%s\n", expanded, open, this.lowLevelSearches.sum(), this.cacheHits.sum(),
+                (System.nanoTime() - startTime) / 1_000_000_000d, Memory.stringRep());
+    }
+
+    // Agents agent1 and agent2 cannot both have their agent or a box on cell, at time1 and time2 respectively.
+    private static class Conflict {
+        final int agent1;
+        final int time1;
+        final int agent2;
+        final int time2;
+        final int cell;
+
+        Conflict(int agent1, int time1, int agent2, int time2, int cell) {
+            this.agent1 = agent1;
+            this.time1 = time1;
+            this.agent2 = agent2;
+            this.time2 = time2;
+            this.cell = cell;
+        }
+    }
+
+    // A node of the constraint tree. It adds the constraint that agent keeps out of cell at time to those of its
+    // ancestors, and holds a plan for every agent.
+    private class Node
+            implements Comparable<Node> {
+        final Node parent;
+        final int agent; // -1 at the root
+        final int cell;
+        final int time;
+        final Action[][] plans;
+        final long id = nextId.getAndIncrement();
+        int cost; // Sum of the plan lengths
+        Conflict conflict; // First conflict between the plans, or null if there is none
+        int conflicts;
+
+        Node(Node parent, int agent, int cell, int time, Action[][] plans) {
+            this.parent = parent;
+            this.agent = agent;
+            this.cell = cell;
+            this.time = time;
+            this.plans = plans;
+        }
+
+        void addConflict(int agent1, int time1, int agent2, int time2, int cell) {
+            if (this.conflict == null) {
+                this.conflict = new Conflict(agent1, time1, agent2, time2, cell);
+            }
+            this.conflicts++;
+        }
+
+        // The constraints on agent, as sorted (time << 32 | cell) pairs.
+        long[] constraints(int agent) {
+            int count = 0;
+            for (Node node = this; node != null; node = node.parent) {
+                count += node.agent == agent ? 1 : 0;
+            }
+            long[] constraints = new long[count];
+            for (Node node = this; node != null; node = node.parent) {
+                if (node.agent == agent) {
+                    constraints[--count] = (long) node.time << 32 | node.cell;
+                }
+            }
+            Arrays.sort(constraints);
+            return constraints;
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            if (this.cost != other.cost) {
+                return Integer.compare(this.cost, other.cost);
+            } else if (this.conflicts != other.conflicts) {
+                return Integer.compare(this.conflicts, other.conflicts);
+            }
+            return Long.compare(this.id, other.id);
+        }
+    }
+
+    private static class LowLevelKey {
+        final int agent;
+        final long[] constraints;
+        final int hash;
+
+        LowLevelKey(int agent, long[] constraints) {
+            this.agent = agent;
+            this.constraints = constraints;
+            this.hash = 31 * agent + Arrays.hashCode(constraints);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LowLevelKey)) {
+                return false;
+            }
+            LowLevelKey other = (LowLevelKey) obj;
+            return this.agent == other.agent && Arrays.equals(this.constraints, other.constraints);
+        }
+    }
+}
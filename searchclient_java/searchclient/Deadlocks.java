@@ -0,0 +1,160 @@
+package searchclient;
+
+// Detects box moves after which some box goal can never be satisfied. Since agents can both push and pull, a box can
+// move one cell in direction d when the destination is free and either the cell behind it (push) or the cell beyond
+// the destination (pull) is free for the agent.
+//  - Dead cells: from each box goal, the cells a box of that letter can be moved back from, found by walking the
+//    moves above backwards over the walls only. A box outside them can never reach a goal of its letter.
+//  - Freeze: a box that cannot move in any direction, because of walls and boxes that are frozen themselves (with
+//    the box under test counted as a wall), never moves again. This covers boxes jammed against each other in
+//    corridors as well as against walls.
+// A letter is only deadlocked when fewer of its boxes are still usable than it has goals, so spare boxes may be lost.
+public class Deadlocks {
+    public static boolean deadCells = true;
+    public static boolean freeze = true;
+
+    private static final int MAX_FREEZE_DEPTH = 4;
+
+    private final Level level;
+    private final boolean[] movable; // Whether some agent has the color of each letter
+    private final int[] goalCount; // Number of goals of each letter
+    private final boolean[][] live; // Live cells of each letter with goals, null for other letters
+    private final ThreadLocal<int[]> paths; // Boxes whose freeze is being decided, per thread, reused across checks
+
+    public Deadlocks(Level level) {
+        this.level = level;
+        this.paths = ThreadLocal.withInitial(() -> new int[MAX_FREEZE_DEPTH]);
+        this.movable = new boolean[26];
+        for (int l = 0; l < 26; l++) {
+            for (Color color : level.agentColors) {
+                if (color != null && color == level.boxColors[l]) {
+                    this.movable[l] = true;
+                }
+            }
+        }
+        this.goalCount = new int[26];
+        for (char letter : level.boxGoalLetters) {
+            this.goalCount[letter - 'A']++;
+        }
+        this.live = new boolean[26][];
+        for (int l = 0; l < 26; l++) {
+            if (this.goalCount[l] > 0 && this.movable[l]) {
+                this.live[l] = this.liveCells((char) ('A' + l));
+            }
+        }
+    }
+
+    private boolean[] liveCells(char letter) {
+        int numCells = this.level.rows * this.level.cols;
+        boolean[] live = new boolean[numCells];
+        int[] queue = new int[numCells];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < this.level.boxGoalCells.length; i++) {
+            if (this.level.boxGoalLetters[i] == letter) {
+                live[this.level.boxGoalCells[i]] = true;
+                queue[tail++] = this.level.boxGoalCells[i];
+            }
+        }
+        while (head < tail) {
+            int to = queue[head++];
+            for (int d = 0; d < 4; d++) {
+                // A box on from, the cell before to in direction d, can be moved onto to if the agent can stand
+                // behind from to push it, or beyond to to pull it. Directions d and d ^ 1 are opposite.
+                int from = this.level.neighbours[4 * to + (d ^ 1)];
+                if (from >= 0 && !live[from] && (this.level.neighbours[4 * from + (d ^ 1)] >= 0
+                        || this.level.neighbours[4 * to + d] >= 0)) {
+                    live[from] = true;
+                    queue[tail++] = from;
+                }
+            }
+        }
+        return live;
+    }
+
+    // Whether state, just generated by moving a box onto boxCell, can no longer reach a goal state.
+    public boolean isDeadlocked(State state, int boxCell) {
+        SearchCounters counters = SearchCounters.current();
+        counters.deadlockChecks.increment();
+        char letter = state.boxLetterAt(boxCell);
+        int l = letter - 'A';
+        boolean lost = false;
+        if (deadCells && this.live[l] != null && !this.live[l][boxCell]) {
+            lost = true;
+        } else if (freeze && this.frozen(state, boxCell, this.paths.get(), 0)) {
+            char goal = this.level.goals[this.level.row(boxCell)][this.level.col(boxCell)];
+            if (goal == letter) {
+                return false;
+            } else if (goal != 0) {
+                counters.deadlockPrunes.increment(); // Stuck on a goal of another letter or of an agent
+                return true;
+            }
+            lost = true;
+        }
+        if (lost && this.usableBoxes(state, letter) < this.goalCount[l]) {
+            counters.deadlockPrunes.increment();
+            return true;
+        }
+        return false;
+    }
+
+    // Number of boxes of letter that can still end up on one of its goals.
+    private int usableBoxes(State state, char letter) {
+        int l = letter - 'A';
+        int usable = 0;
+        for (int b = 0; b < this.level.numBoxes; b++) {
+            if (this.level.boxLetters[b] != letter) {
+                continue;
+            }
+            int cell = state.boxCell(b);
+            if (deadCells && this.live[l] != null && !this.live[l][cell]) {
+                continue;
+            }
+            if (freeze && this.level.goals[this.level.row(cell)][this.level.col(cell)] != letter
+                    && this.frozen(state, cell, this.paths.get(), 0)) {
+                continue;
+            }
+            usable++;
+        }
+        return usable;
+    }
+
+    // Whether the box on cell can never move again. path holds the cells of the boxes whose freeze is being decided
+    // further up, which count as walls. Beyond MAX_FREEZE_DEPTH, boxes are assumed to be movable.
+    private boolean frozen(State state, int cell, int[] path, int depth) {
+        if (depth == path.length) {
+            return false;
+        }
+        path[depth] = cell;
+        for (int d = 0; d < 4; d++) {
+            int next = this.level.neighbours[4 * cell + d];
+            int beyond = next < 0 ? -1 : this.level.neighbours[4 * next + d];
+            if (!this.blocked(state, next, path, depth + 1)
+                    && (!this.blocked(state, this.level.neighbours[4 * cell + (d ^ 1)], path, depth + 1)
+                            || !this.blocked(state, beyond, path, depth + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Whether cell, -1 for a wall, holds a wall or a box that can never move.
+    private boolean blocked(State state, int cell, int[] path, int depth) {
+        if (cell < 0) {
+            return true;
+        }
+        for (int i = 0; i < depth; i++) {
+            if (path[i] == cell) {
+                return true;
+            }
+        }
+        int b = state.boxIndexAt(cell);
+        if (b < 0) {
+            return false;
+        }
+        if (!this.movable[this.level.boxLetters[b] - 'A']) {
+            return true;
+        }
+        return this.frozen(state, cell, path, depth);
+    }
+}
@@ -0,0 +1,114 @@
+package searchclient;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+// Shortest-path distances between free cells of a level, ignoring boxes and agents. Only free cells are indexed,
+// and each BFS result is a short[] over those indices. Rows from goal cells are computed in parallel on the common
+// fork-join pool when the map is built (unless eager is off), rows from any other cell the first time they are
+// queried, or, when hierarchical is set, not at all: such queries are answered with the abstract distances of the
+// LevelGraph, which cost no memory and far less time on large open levels, but may be a little too long. Queries are
+// safe from several search threads; two threads may then both compute a missing row, and whichever finishes first
+// publishes it.
+public class DistanceMap {
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // Whether rows from goal cells are computed up front rather than on first query.
+    public static boolean eager = true;
+    // Whether distances between two cells without rows are taken from the LevelGraph instead of a new row.
+    public static boolean hierarchical = false;
+
+    private final Level level;
+    private final int[] freeIndex; // Index of each grid cell among the free cells, or -1 for walls
+    private final int[] freeCells; // Grid cell of each free index
+    private final AtomicReferenceArray<short[]> rows; // BFS result from each free index, null until computed
+    private final ThreadLocal<int[]> queues; // BFS queue of each thread, reused between runs
+
+    public DistanceMap(Level level) {
+        this.level = level;
+        int numCells = level.rows * level.cols;
+        this.freeIndex = new int[numCells];
+        int numFree = 0;
+        for (int cell = 0; cell < numCells; cell++) {
+            this.freeIndex[cell] = level.walls[level.row(cell)][level.col(cell)] ? -1 : numFree++;
+        }
+        this.freeCells = new int[numFree];
+        for (int cell = 0; cell < numCells; cell++) {
+            if (this.freeIndex[cell] >= 0) {
+                this.freeCells[this.freeIndex[cell]] = cell;
+            }
+        }
+        this.rows = new AtomicReferenceArray<>(numFree);
+        int queueSize = numFree;
+        this.queues = ThreadLocal.withInitial(() -> new int[queueSize]);
+
+        if (DistanceMap.eager) {
+            int[] sources = IntStream.concat(IntStream.of(level.agentGoalCells), IntStream.of(level.boxGoalCells))
+                    .filter(cell -> cell >= 0)
+                    .map(cell -> this.freeIndex[cell])
+                    .distinct()
+                    .toArray();
+            IntStream.of(sources).parallel().forEach(source -> this.rows.set(source, this.bfs(source)));
+        }
+    }
+
+    // Returns the length of a shortest path between the cells from and to, or UNREACHABLE.
+    public int distance(int from, int to) {
+        int fromIndex = this.freeIndex[from];
+        int toIndex = this.freeIndex[to];
+        if (fromIndex < 0 || toIndex < 0) {
+            return UNREACHABLE;
+        }
+        // Distances are symmetric, so use whichever row is already there
+        short[] row = this.rows.get(toIndex);
+        int distance;
+        if (row != null) {
+            distance = row[fromIndex];
+        } else if ((row = this.rows.get(fromIndex)) != null) {
+            distance = row[toIndex];
+        } else if (DistanceMap.hierarchical) {
+            return this.level.getGraph().abstractDistance(from, to);
+        } else {
+            distance = this.row(to)[fromIndex];
+        }
+        return distance < 0 ? UNREACHABLE : distance;
+    }
+
+    // Returns the distances from cell to every free cell, indexed by free index, with -1 for unreachable cells.
+    private short[] row(int cell) {
+        int source = this.freeIndex[cell];
+        short[] row = this.rows.get(source);
+        if (row == null) {
+            this.rows.compareAndSet(source, null, this.bfs(source));
+            row = this.rows.get(source);
+        }
+        return row;
+    }
+
+    private short[] bfs(int source) {
+        short[] distances = new short[this.freeCells.length];
+        Arrays.fill(distances, (short) -1);
+        int[] queue = this.queues.get();
+        int head = 0;
+        int tail = 0;
+        distances[source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int index = queue[head++];
+            int cell = this.freeCells[index];
+            short next = (short) (distances[index] + 1);
+            for (int d = 0; d < 4; d++) {
+                int neighbourCell = this.level.neighbours[4 * cell + d];
+                if (neighbourCell >= 0) {
+                    int neighbour = this.freeIndex[neighbourCell];
+                    if (distances[neighbour] < 0) {
+                        distances[neighbour] = next;
+                        queue[tail++] = neighbour;
+                    }
+                }
+            }
+        }
+        return distances;
+    }
+}
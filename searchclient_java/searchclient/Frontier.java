@@ -1,7 +1,7 @@
 package searchclient;
 
 import java.util.ArrayDeque;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.PriorityQueue;
 
 public interface Frontier {
@@ -13,27 +13,45 @@ public interface Frontier {
 
     int size();
 
-    boolean contains(State state);
-
     String getName();
+
+    // A new, empty frontier that orders states as this one does, with the same heuristic and weights.
+    Frontier emptyCopy();
+
+    // Precomputes whatever add needs to order state, so that add itself is cheap. May be called from several threads
+    // at once for different states.
+    default void evaluate(State state) {
+    }
+
+    // Whether states may be popped in a batch and expanded together. Such frontiers pop states in an order that
+    // precedes can predict, and adding popped states back in reverse order of popping restores the frontier.
+    default boolean supportsBatches() {
+        return false;
+    }
+
+    // Whether state, if added now, would be popped before other, had other been added before it.
+    default boolean precedes(State state, State other) {
+        return true;
+    }
+
+    // Whether the search is meant to find shortest plans, see Heuristic.findsShortestPlans.
+    default boolean findsShortestPlans() {
+        return false;
+    }
 }
 
 class FrontierBFS
         implements Frontier {
     private final ArrayDeque<State> queue = new ArrayDeque<>(65536);
-    private final HashSet<State> set = new HashSet<>(65536);
 
     @Override
     public void add(State state) {
         this.queue.addLast(state);
-        this.set.add(state);
     }
 
     @Override
     public State pop() {
-        State state = this.queue.pollFirst();
-        this.set.remove(state);
-        return state;
+        return this.queue.pollFirst();
     }
 
     @Override
@@ -47,31 +65,37 @@ class FrontierBFS
     }
 
     @Override
-    public boolean contains(State state) {
-        return this.set.contains(state);
+    public String getName() {
+        return "breadth-first search";
     }
 
     @Override
-    public String getName() {
-        return "breadth-first search";
+    public Frontier emptyCopy() {
+        return new FrontierBFS();
+    }
+
+    @Override
+    public boolean supportsBatches() {
+        return true;
+    }
+
+    @Override
+    public boolean precedes(State state, State other) {
+        return false;
     }
 }
 
 class FrontierDFS implements Frontier {
     private final ArrayDeque<State> queue = new ArrayDeque<>(65536);
-    private final HashSet<State> set = new HashSet<>(65536);
 
     @Override
     public void add(State state) {
         this.queue.addLast(state);
-        this.set.add(state);
     }
 
     @Override
     public State pop() {
-        State state = this.queue.pollLast();
-        this.set.remove(state);
-        return state;
+        return this.queue.pollLast();
     }
 
     @Override
@@ -85,20 +109,19 @@ class FrontierDFS implements Frontier {
     }
 
     @Override
-    public boolean contains(State state) {
-        return this.set.contains(state);
+    public String getName() {
+        return "depth-first search";
     }
 
     @Override
-    public String getName() {
-        return "depth-first search";
+    public Frontier emptyCopy() {
+        return new FrontierDFS();
     }
 }
 
 class FrontierBestFirst
         implements Frontier {
     private PriorityQueue<State> queue;
-    private HashSet<State> set = new HashSet<>();
     private Heuristic heuristic;
 
     public FrontierBestFirst(Heuristic H) {
@@ -109,14 +132,11 @@ class FrontierBestFirst
     @Override
     public void add(State state) {
         this.queue.add(state);
-        this.set.add(state);
     }
 
     @Override
     public State pop() {
-        State state = this.queue.poll();
-        this.set.remove(state);
-        return state;
+        return this.queue.poll();
     }
 
     @Override
@@ -130,12 +150,130 @@ class FrontierBestFirst
     }
 
     @Override
-    public boolean contains(State state) {
-        return this.set.contains(state);
+    public String getName() {
+        return String.format("best-first search using %s", this.heuristic.toString());
+    }
+
+    @Override
+    public Frontier emptyCopy() {
+        return new FrontierBestFirst(this.heuristic);
+    }
+
+    @Override
+    public boolean findsShortestPlans() {
+        return this.heuristic.findsShortestPlans();
+    }
+}
+
+// Best-first frontier for integer evaluations. f is computed once when a state is added and the state is put in the
+// bucket for that value, so push and pop are O(1) apart from skipping empty buckets. Within a bucket states are
+// either popped LIFO, or by decreasing g, which for a fixed f means increasing h.
+class FrontierBucket
+        implements Frontier {
+    private final ArrayList<Bucket> buckets = new ArrayList<>();
+    private final Heuristic heuristic;
+    private final boolean lifo;
+    private int minF = 0;
+    private int size = 0;
+
+    public FrontierBucket(Heuristic H, boolean lifo) {
+        this.heuristic = H;
+        this.lifo = lifo;
+    }
+
+    public FrontierBucket(Heuristic H) {
+        this(H, false);
+    }
+
+    private static class Bucket {
+        // States by g, or everything in byG[0] for LIFO buckets
+        private final ArrayList<ArrayDeque<State>> byG = new ArrayList<>();
+        private int maxG = 0;
+        private int size = 0;
+
+        void add(State state, int g) {
+            while (this.byG.size() <= g) {
+                this.byG.add(new ArrayDeque<>());
+            }
+            this.byG.get(g).addLast(state);
+            this.maxG = Math.max(this.maxG, g);
+            this.size++;
+        }
+
+        State pop() {
+            ArrayDeque<State> deque = this.byG.get(this.maxG);
+            while (deque.isEmpty()) {
+                deque = this.byG.get(--this.maxG);
+            }
+            this.size--;
+            return deque.pollLast();
+        }
+    }
+
+    @Override
+    public void add(State state) {
+        int f = this.heuristic.f(state);
+        while (this.buckets.size() <= f) {
+            this.buckets.add(new Bucket());
+        }
+        this.buckets.get(f).add(state, this.lifo ? 0 : state.g);
+        this.minF = Math.min(this.minF, f);
+        this.size++;
+    }
+
+    @Override
+    public State pop() {
+        if (this.size == 0) {
+            return null;
+        }
+        Bucket bucket = this.buckets.get(this.minF);
+        while (bucket.size == 0) {
+            bucket = this.buckets.get(++this.minF);
+        }
+        this.size--;
+        return bucket.pop();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
     }
 
     @Override
     public String getName() {
-        return String.format("best-first search using %s", this.heuristic.toString());
+        return String.format("bucket best-first search using %s", this.heuristic.toString());
+    }
+
+    @Override
+    public Frontier emptyCopy() {
+        return new FrontierBucket(this.heuristic, this.lifo);
+    }
+
+    @Override
+    public boolean findsShortestPlans() {
+        return this.heuristic.findsShortestPlans();
+    }
+
+    @Override
+    public void evaluate(State state) {
+        this.heuristic.f(state);
+    }
+
+    @Override
+    public boolean supportsBatches() {
+        return true;
+    }
+
+    // Within a bucket the state added last is popped first, so state wins ties.
+    @Override
+    public boolean precedes(State state, State other) {
+        int f = this.heuristic.f(state);
+        int otherF = this.heuristic.f(other);
+        return f < otherF || (f == otherF && (this.lifo || state.g >= other.g));
     }
 }
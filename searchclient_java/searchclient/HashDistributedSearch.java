@@ -0,0 +1,230 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Hash-distributed A* (HDA*). Every state is owned by one of the worker threads, chosen from its fingerprint, and
+// only its owner does duplicate detection on it and expands it. Each worker has its own best-first frontier,
+// heuristic and closed set; children owned by other workers are sent to them in batches through lock-free queues.
+// Since workers do not expand in global f order, a state may first arrive on a more expensive path, so the closed
+// sets keep the lowest g of each state and reopen it when a cheaper path turns up. Goals are only accepted when
+// popped, and the search ends once no state is left anywhere, so with an admissible heuristic the incumbent plan is
+// optimal.
+public class HashDistributedSearch {
+    private static final int BATCH_SIZE = 64; // States per message between workers
+    private static final int FLUSH_INTERVAL = 256; // Expansions between flushes of partly filled batches
+
+    private final int numThreads;
+    private final Supplier<Heuristic> heuristics;
+    private final Worker[] workers;
+
+    // Number of states in flight between workers or in frontiers. Sent states are counted before they are sent, but
+    // every other change is kept by the worker until it runs out of states, so the count cannot reach 0 while a busy
+    // worker still has work, and the search is over when it does.
+    private final AtomicLong pending = new AtomicLong();
+    private volatile boolean done = false;
+    private volatile Throwable failure = null;
+
+    private State incumbent = null; // Cheapest goal state found so far, guarded by this
+    private volatile int bound = Integer.MAX_VALUE; // g of the incumbent
+
+    public HashDistributedSearch(int numThreads, Supplier<Heuristic> heuristics) {
+        this.numThreads = numThreads;
+        this.heuristics = heuristics;
+        this.workers = new Worker[numThreads];
+    }
+
+    // Searches from root for a cheapest state in which agentIndex has reached its goals, and returns it, or null if
+    // there is none. Progress is printed with printStatus every second while the workers run.
+    public State search(State root, int agentIndex, StatusPrinter printStatus) {
+        for (int i = 0; i < this.numThreads; i++) {
+            this.workers[i] = new Worker(i, agentIndex);
+        }
+        this.pending.set(1);
+        this.workers[this.owner(root)].inbox.add(new State[] { root });
+
+        Thread[] threads = new Thread[this.numThreads];
+        for (int i = 0; i < this.numThreads; i++) {
+            threads[i] = new Thread(this.workers[i], "hda-worker-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        try {
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    thread.join(1000);
+                    if (thread.isAlive()) {
+                        printStatus.print(this.expanded(), this.frontierSize());
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            this.done = true;
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        printStatus.print(this.expanded(), this.frontierSize());
+
+        if (this.failure instanceof OutOfMemoryError) {
+            throw (OutOfMemoryError) this.failure;
+        } else if (this.failure != null) {
+            throw new RuntimeException("Search worker failed.", this.failure);
+        }
+        synchronized (this) {
+            return this.incumbent;
+        }
+    }
+
+    public interface StatusPrinter {
+        void print(long expanded, int frontierSize);
+    }
+
+    public long expanded() {
+        long expanded = 0;
+        for (Worker worker : this.workers) {
+            expanded += worker.expanded;
+        }
+        return expanded;
+    }
+
+    public int frontierSize() {
+        int size = 0;
+        for (Worker worker : this.workers) {
+            size += worker.frontierSize;
+        }
+        return size;
+    }
+
+    private int owner(State state) {
+        // A different multiplier from StateSet's, or each worker would only use its own slice of its closed set
+        long mixed = state.fingerprint() * 0xC2B2AE3D27D4EB4FL;
+        return (int) (((mixed >>> 32) * this.numThreads) >>> 32);
+    }
+
+    private synchronized void offerGoal(State goal) {
+        if (goal.g < this.bound) {
+            this.incumbent = goal;
+            this.bound = goal.g;
+        }
+    }
+
+    private class Worker
+            implements Runnable {
+        private final int id;
+        private final int agentIndex;
+        private final ConcurrentLinkedQueue<State[]> inbox = new ConcurrentLinkedQueue<>();
+        private final ArrayList<ArrayList<State>> outboxes = new ArrayList<>();
+        private Heuristic heuristic;
+        private Frontier frontier;
+        private StateSet closed;
+        private long delta = 0; // Change to pending not yet published
+        private volatile long expanded = 0;
+        private volatile int frontierSize = 0;
+
+        Worker(int id, int agentIndex) {
+            this.id = id;
+            this.agentIndex = agentIndex;
+            for (int i = 0; i < numThreads; i++) {
+                this.outboxes.add(new ArrayList<>(BATCH_SIZE));
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.heuristic = heuristics.get();
+                this.frontier = SearchClient.bestFirst(this.heuristic);
+                this.closed = new StateSet(65536 / numThreads, SearchClient.verifyStates, true);
+                this.loop();
+            } catch (Throwable ex) {
+                failure = ex;
+                done = true;
+            }
+        }
+
+        private void loop() {
+            long sinceFlush = 0;
+            while (!done) {
+                State[] batch;
+                while ((batch = this.inbox.poll()) != null) {
+                    for (State state : batch) {
+                        if (!this.keep(state)) {
+                            this.delta--; // Counted by the sender
+                        }
+                    }
+                }
+
+                State state = this.frontier.pop();
+                if (state == null) {
+                    this.flush();
+                    pending.addAndGet(this.delta);
+                    this.delta = 0;
+                    this.frontierSize = 0;
+                    if (pending.get() == 0) {
+                        done = true;
+                    } else if (this.inbox.isEmpty()) {
+                        LockSupport.parkNanos(50_000);
+                    }
+                    continue;
+                }
+                this.delta--;
+                this.frontierSize = this.frontier.size();
+
+                if (state.g + this.heuristic.h(state) >= bound) {
+                    continue; // Cannot lead to a cheaper goal than the incumbent
+                }
+                if (state.isGoalStateForAgent(this.agentIndex)) {
+                    offerGoal(state);
+                    continue;
+                }
+                this.expanded++;
+                for (State child : ScratchState.forThread().expand(state, this.agentIndex, null)) {
+                    int owner = owner(child);
+                    if (owner == this.id) {
+                        if (this.keep(child)) {
+                            this.delta++;
+                        }
+                    } else {
+                        ArrayList<State> outbox = this.outboxes.get(owner);
+                        outbox.add(child);
+                        if (outbox.size() == BATCH_SIZE) {
+                            this.send(owner);
+                        }
+                    }
+                }
+                if (++sinceFlush == FLUSH_INTERVAL) {
+                    this.flush();
+                    sinceFlush = 0;
+                }
+            }
+        }
+
+        // Adds a state owned by this worker to the frontier unless it was already reached at least as cheaply.
+        private boolean keep(State state) {
+            if (this.closed.addOrImprove(state)) {
+                this.frontier.add(state);
+                return true;
+            }
+            return false;
+        }
+
+        private void send(int owner) {
+            ArrayList<State> outbox = this.outboxes.get(owner);
+            // Count the states before they become visible, so pending cannot reach 0 while they are in flight
+            pending.addAndGet(outbox.size());
+            workers[owner].inbox.add(outbox.toArray(new State[0]));
+            outbox.clear();
+        }
+
+        private void flush() {
+            for (int owner = 0; owner < numThreads; owner++) {
+                if (!this.outboxes.get(owner).isEmpty()) {
+                    this.send(owner);
+                }
+            }
+        }
+    }
+}
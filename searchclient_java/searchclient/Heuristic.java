@@ -1,44 +1,76 @@
 package searchclient;
 
+import java.util.Arrays;
 import java.util.Comparator;
 
 public abstract class Heuristic
         implements Comparator<State> {
-            
-            private int[][][][] distances;
+    // Whether a child's h may be derived from its parent's h and the cells touched by the leading action.
+    public static boolean incremental = false;
 
-            public Heuristic(State initialState) {
-                // Here's a chance to pre-process the static parts of the level.
-                this.distances = initialState.getDistances();
-        
+    protected final DistanceMap distances;
+    // Distance from each cell to the nearest agent goal, or -1 where no agent goal is reachable.
+    private final int[] nearestAgentGoal;
+
+    public Heuristic(State initialState) {
+        // Here's a chance to pre-process the static parts of the level.
+        this.distances = State.level.getDistances();
+        Level level = State.level;
+        this.nearestAgentGoal = new int[level.rows * level.cols];
+        for (int cell = 0; cell < this.nearestAgentGoal.length; cell++) {
+            int minDistance = DistanceMap.UNREACHABLE;
+            for (int goal : level.agentGoalCells) {
+                if (goal >= 0) {
+                    minDistance = Math.min(minDistance, this.distances.distance(cell, goal));
+                }
+            }
+            this.nearestAgentGoal[cell] = minDistance == DistanceMap.UNREACHABLE ? -1 : minDistance;
+        }
+    }
+
+    // Returns h for s, evaluating it only the first time and caching the value on the state.
+    public int h(State s) {
+        if (s.h < 0) {
+            if (Heuristic.incremental && s.parent != null && s.parent.h >= 0) {
+                s.h = this.incrementalH(s.parent, s);
+                SearchCounters.current().incrementalEvaluations.increment();
+            } else {
+                s.h = this.H(s);
+                SearchCounters.current().evaluations.increment();
             }
+        }
+        return s.h;
+    }
 
     public int H(State s) { /* improved heuristic */
         int totalDistance = 0;
-        int numAgents = s.agentRows.length;
-        // For each agent...
-        for (int i = 0; i < numAgents; i++) {
-            // Find the distance to the nearest goal
-            int minDistance = Integer.MAX_VALUE;
-            for (int row = 1; row < s.goals.length - 1; row++) {
-                for (int col = 1; col < s.goals[row].length - 1; col++) {
-                    char goal = s.goals[row][col];
-                    if ('0' <= goal && goal <= '9') {
-                        int distance = this.distances[s.agentRows[i]][s.agentCols[i]][row][col];
-                        minDistance = Math.min(minDistance, distance);
-                    }
-                }
-            }
-            totalDistance += minDistance;
+        // For each agent, add the distance to the nearest goal
+        for (int i = 0; i < State.level.numAgents; i++) {
+            totalDistance += this.agentTerm(s.agentCell(i));
         }
         return totalDistance;
-
     }
 
+    // Computes H(child) from H(parent), given that child was generated from parent by one action of
+    // child.currentAgentIndex. Heuristics that cannot do better re-evaluate the child.
+    protected int incrementalH(State parent, State child) {
+        int agent = child.currentAgentIndex;
+        return parent.h - this.agentTerm(parent.agentCell(agent)) + this.agentTerm(child.agentCell(agent));
+    }
 
+    private int agentTerm(int cell) {
+        // Agents without a reachable goal do not contribute
+        return Math.max(this.nearestAgentGoal[cell], 0);
+    }
 
     public abstract int f(State s);
 
+    // Whether search with this evaluation is meant to find shortest plans, so that a state reached again with a lower g
+    // has to be expanded again rather than dropped.
+    public boolean findsShortestPlans() {
+        return false;
+    }
+
     @Override
     public int compare(State s1, State s2) {
         return this.f(s1) - this.f(s2);
@@ -53,7 +85,12 @@ class HeuristicAStar
 
     @Override
     public int f(State s) {
-        return s.g + this.H(s);
+        return s.g + this.h(s);
+    }
+
+    @Override
+    public boolean findsShortestPlans() {
+        return true;
     }
 
     @Override
@@ -73,7 +110,7 @@ class HeuristicWeightedAStar
 
     @Override
     public int f(State s) {
-        return s.g + this.w * this.H(s);
+        return s.g + this.w * this.h(s);
     }
 
     @Override
@@ -90,7 +127,7 @@ class HeuristicGreedy
 
     @Override
     public int f(State s) {
-        return this.H(s);
+        return this.h(s);
     }
 
     @Override
@@ -98,3 +135,292 @@ class HeuristicGreedy
         return "greedy evaluation";
     }
 }
+
+// Box-aware heuristic. For the agent being planned, boxes of its color are matched to the goals of their letter and
+// the box-to-goal distances of the matching are summed. The matching is greedy by default, or an optimal assignment
+// with the Hungarian method when exact is set. h is the larger of that sum and the distance from the agent to the
+// nearest box that is not yet on a goal (or to the agent's own goal once all boxes are placed). Every push or pull
+// moves one box one cell, and the agent has to walk to a box before it can move one, so both are lower bounds on the
+// plan length, but not their sum, as the walk to the first box may also be part of moving the boxes. With the exact
+// matching, h is therefore admissible; the greedy matching may overestimate the sum.
+// f = gWeight * g + hWeight * h, so A*, WA* and greedy search are (1, 1), (1, w) and (0, 1).
+class HeuristicBoxes
+        extends Heuristic {
+    private final int gWeight;
+    private final int hWeight;
+    private final boolean exact;
+    private final int infinity; // Stands in for the distance of a box that cannot reach a goal
+    private final int[][] goalsByLetter; // Goal cells of each letter
+    private final int[] letterStart = new int[26]; // Box indices of each letter, [letterStart, letterEnd)
+    private final int[] letterEnd = new int[26];
+    private final ThreadLocal<Scratch> scratch; // Matching arrays of each thread, reused between evaluations
+
+    public HeuristicBoxes(State initialState, int gWeight, int hWeight, boolean exact) {
+        super(initialState);
+        this.gWeight = gWeight;
+        this.hWeight = hWeight;
+        this.exact = exact;
+        Level level = State.level;
+        this.infinity = level.rows * level.cols;
+        this.goalsByLetter = new int[26][];
+        for (int l = 0; l < 26; l++) {
+            char letter = (char) ('A' + l);
+            this.goalsByLetter[l] = new int[0];
+            for (int i = 0; i < level.boxGoalCells.length; i++) {
+                if (level.boxGoalLetters[i] == letter) {
+                    int[] goals = Arrays.copyOf(this.goalsByLetter[l], this.goalsByLetter[l].length + 1);
+                    goals[goals.length - 1] = level.boxGoalCells[i];
+                    this.goalsByLetter[l] = goals;
+                }
+            }
+        }
+        for (int b = 0; b < level.numBoxes; b++) {
+            int l = level.boxLetters[b] - 'A';
+            this.letterStart[l] = level.boxGroupStart[b];
+            this.letterEnd[l] = level.boxGroupEnd[b];
+        }
+        int maxGoals = 0;
+        int maxBoxes = 0;
+        for (int l = 0; l < 26; l++) {
+            maxGoals = Math.max(maxGoals, this.goalsByLetter[l].length);
+            maxBoxes = Math.max(maxBoxes, this.letterEnd[l] - this.letterStart[l]);
+        }
+        int goalsSize = maxGoals;
+        int boxesSize = maxBoxes;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(goalsSize, boxesSize));
+    }
+
+    @Override
+    public int H(State s) {
+        if (s.currentAgentIndex >= State.level.numAgents) {
+            return 0; // The state search uses to combine the plans once every agent has one
+        }
+        Color color = State.level.agentColors[s.currentAgentIndex];
+        int total = 0;
+        for (int l = 0; l < 26; l++) {
+            if (this.goalsByLetter[l].length > 0 && State.level.boxColors[l] == color) {
+                total += this.exact ? this.assignmentCost(s, l) : this.greedyCost(s, l);
+            }
+        }
+        return Math.max(total, this.agentTerm(s));
+    }
+
+    // Moves and NoOps leave every box in place, so the matching sum of the child is that of the parent. It is the
+    // parent's h unless the agent term decided that, and then it is at most the parent's h.
+    @Override
+    protected int incrementalH(State parent, State child) {
+        ActionType type = child.getLeadingAction().type;
+        if (type == ActionType.Move || type == ActionType.NoOp) {
+            int agentTerm = this.agentTerm(child);
+            if (parent.h > this.agentTerm(parent) || agentTerm >= parent.h) {
+                return Math.max(parent.h, agentTerm);
+            }
+        }
+        return this.H(child);
+    }
+
+    private int boxDistance(int boxCell, int goalCell) {
+        int distance = this.distances.distance(boxCell, goalCell);
+        return distance == DistanceMap.UNREACHABLE ? this.infinity : distance;
+    }
+
+    // Each goal in turn, starting with those closest to some box, takes its nearest unused box.
+    private int greedyCost(State s, int l) {
+        int[] goals = this.goalsByLetter[l];
+        int start = this.letterStart[l];
+        int numBoxes = this.letterEnd[l] - start;
+        Scratch scratch = this.scratch.get();
+        int[][] costs = scratch.costs;
+        long[] order = scratch.order; // Nearest distance in the high bits, goal index in the low bits
+        for (int i = 0; i < goals.length; i++) {
+            int nearest = this.infinity;
+            for (int b = 0; b < numBoxes; b++) {
+                costs[i][b] = this.boxDistance(s.boxCell(start + b), goals[i]);
+                nearest = Math.min(nearest, costs[i][b]);
+            }
+            order[i] = ((long) nearest << 32) | i;
+        }
+        Arrays.sort(order, 0, goals.length);
+        boolean[] used = scratch.used;
+        Arrays.fill(used, 0, numBoxes, false);
+        int total = 0;
+        for (int k = 0; k < goals.length; k++) {
+            int i = (int) order[k];
+            int best = -1;
+            for (int b = 0; b < numBoxes; b++) {
+                if (!used[b] && (best < 0 || costs[i][b] < costs[i][best])) {
+                    best = b;
+                }
+            }
+            if (best < 0) {
+                total += this.infinity; // More goals than boxes
+                continue;
+            }
+            used[best] = true;
+            total += costs[i][best];
+        }
+        return total;
+    }
+
+    // Minimum cost assignment of goals to distinct boxes, by the Hungarian method in O(goals^2 * boxes).
+    private int assignmentCost(State s, int l) {
+        int[] goals = this.goalsByLetter[l];
+        int start = this.letterStart[l];
+        int n = goals.length;
+        int m = this.letterEnd[l] - start;
+        if (n > m) {
+            return this.greedyCost(s, l); // More goals than boxes, the level cannot be solved anyway
+        }
+        Scratch scratch = this.scratch.get();
+        int[][] a = scratch.costs; // 1-based here, a[i][j] is the distance of box j - 1 to goal i - 1
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                a[i][j] = this.boxDistance(s.boxCell(start + j - 1), goals[i - 1]);
+            }
+        }
+        int[] u = scratch.u;
+        int[] v = scratch.v;
+        int[] p = scratch.p; // Goal assigned to each box, 0 if none
+        int[] way = scratch.way;
+        int[] minv = scratch.minv;
+        boolean[] used = scratch.used;
+        Arrays.fill(u, 0, n + 1, 0);
+        Arrays.fill(v, 0, m + 1, 0);
+        Arrays.fill(p, 0, m + 1, 0);
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, 0, m + 1, Integer.MAX_VALUE);
+            Arrays.fill(used, 0, m + 1, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                int delta = Integer.MAX_VALUE;
+                int j1 = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (!used[j]) {
+                        int cur = a[i0][j] - u[i0] - v[j];
+                        if (cur < minv[j]) {
+                            minv[j] = cur;
+                            way[j] = j0;
+                        }
+                        if (minv[j] < delta) {
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+        int total = 0;
+        for (int j = 1; j <= m; j++) {
+            if (p[j] != 0) {
+                total += a[p[j]][j];
+            }
+        }
+        return total;
+    }
+
+    // Distance from the agent to the nearest box that is not on a goal of its letter, among the letters of its color
+    // with unsatisfied goals, minus one since the agent only has to get next to it. One of those boxes has to move
+    // before those goals can be satisfied. Once every goal is satisfied, the distance to the agent's own goal.
+    private int agentTerm(State s) {
+        Level level = State.level;
+        int agent = s.currentAgentIndex;
+        int agentCell = s.agentCell(agent);
+        int nearest = Integer.MAX_VALUE;
+        for (int l = 0; l < 26; l++) {
+            if (level.boxColors[l] != level.agentColors[agent] || this.satisfied(s, l)) {
+                continue;
+            }
+            for (int b = this.letterStart[l]; b < this.letterEnd[l]; b++) {
+                int boxCell = s.boxCell(b);
+                if (level.goals[level.row(boxCell)][level.col(boxCell)] == level.boxLetters[b]) {
+                    continue;
+                }
+                int distance = this.distances.distance(agentCell, boxCell);
+                if (distance != DistanceMap.UNREACHABLE) {
+                    nearest = Math.min(nearest, distance - 1);
+                }
+            }
+        }
+        if (nearest != Integer.MAX_VALUE) {
+            return nearest;
+        }
+        int goal = level.agentGoalCells[agent];
+        if (goal >= 0) {
+            int distance = this.distances.distance(agentCell, goal);
+            return distance == DistanceMap.UNREACHABLE ? 0 : distance;
+        }
+        return 0;
+    }
+
+    // Whether every goal of letter l has a box of that letter on it.
+    private boolean satisfied(State s, int l) {
+        for (int goal : this.goalsByLetter[l]) {
+            if (!s.hasBoxAt((char) ('A' + l), goal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int f(State s) {
+        return this.gWeight * s.g + this.hWeight * this.h(s);
+    }
+
+    @Override
+    public boolean findsShortestPlans() {
+        return this.gWeight == 1 && this.hWeight == 1;
+    }
+
+    // Arrays of one thread's matchings, large enough for the letter with the most goals and the most boxes. costs
+    // holds the distances of the greedy matching from [0][0] and those of the Hungarian method from [1][1].
+    private static class Scratch {
+        final int[][] costs;
+        final long[] order;
+        final boolean[] used;
+        final int[] u;
+        final int[] v;
+        final int[] p;
+        final int[] way;
+        final int[] minv;
+
+        Scratch(int maxGoals, int maxBoxes) {
+            this.costs = new int[maxGoals + 1][maxBoxes + 1];
+            this.order = new long[maxGoals];
+            this.used = new boolean[maxBoxes + 1];
+            this.u = new int[maxGoals + 1];
+            this.v = new int[maxBoxes + 1];
+            this.p = new int[maxBoxes + 1];
+            this.way = new int[maxBoxes + 1];
+            this.minv = new int[maxBoxes + 1];
+        }
+    }
+
+    @Override
+    public String toString() {
+        String matching = this.exact ? "optimal box matching" : "greedy box matching";
+        if (this.gWeight == 0) {
+            return "greedy evaluation with " + matching;
+        } else if (this.hWeight == 1) {
+            return "A* evaluation with " + matching;
+        }
+        return String.format("WA*(%d) evaluation with %s", this.hWeight, matching);
+    }
+}
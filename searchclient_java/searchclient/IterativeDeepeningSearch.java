@@ -0,0 +1,154 @@
+package searchclient;
+
+import java.util.Arrays;
+
+// Iterative-deepening A* (IDA*). Each iteration is a depth-first search that cuts off states with g + h above a
+// threshold, starting at h of the root and raised to the smallest f that was cut off. The search walks a single
+// scratch state, applying each action in place and undoing it with its inverse on the way back, so apart from the
+// path and the transposition table no memory is used however deep it goes.
+// The transposition table is direct-mapped on state fingerprints and records the lowest g each state was reached with
+// in the current iteration. Reaching it again with no lower g is pruned, since the earlier visit searched at least as
+// deep below it. Entries are tagged with the iteration, so the table never has to be cleared, and colliding states
+// simply overwrite each other, which only loses pruning.
+public class IterativeDeepeningSearch {
+    private static final Action[] ACTIONS = Action.values();
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final Heuristic heuristic;
+    private final long[] keys;
+    private final long[] entries; // Iteration tag in the high half, g in the low half
+    private final int mask;
+    private int tag = 0;
+    private long nodes = 0;
+    private long descents = 0; // Nodes searched below, as opposed to cut off
+    private long counted = 0; // Nodes and descents already added to the counters of ScratchState
+    private long countedDescents = 0;
+
+    // The transposition table has 2^tableBits entries of 16 bytes.
+    public IterativeDeepeningSearch(Heuristic heuristic, int tableBits) {
+        this.heuristic = heuristic;
+        this.keys = new long[1 << tableBits];
+        this.entries = new long[1 << tableBits];
+        this.mask = (1 << tableBits) - 1;
+    }
+
+    // Searches from root for a cheapest state in which agentIndex has reached its goals, and returns it with its
+    // path from root as parents, or null if there is none or the search was interrupted.
+    public State search(State root, int agentIndex) {
+        Level level = State.level;
+        ScratchState scratch = new ScratchState(root);
+        scratch.currentAgentIndex = agentIndex;
+        if (scratch.isGoalStateForAgent(agentIndex)) {
+            return root;
+        }
+        Action[] path = new Action[64]; // Action leading from each depth to the next
+        int[] next = new int[64]; // Ordinal of the next action to try at each depth
+        int threshold = this.heuristic.H(scratch);
+        long startTime = System.nanoTime();
+
+        while (threshold != INFINITY) {
+            this.tag++;
+            this.record(scratch.fingerprint(), 0);
+            int nextThreshold = INFINITY;
+            int depth = 0;
+            next[0] = 0;
+            while (depth >= 0) {
+                if (next[depth] == ACTIONS.length) {
+                    // Every action tried, back up
+                    if (--depth >= 0) {
+                        scratch.undo(agentIndex, path[depth]);
+                    }
+                    continue;
+                }
+                Action action = ACTIONS[next[depth]++];
+                if (action.type == ActionType.NoOp || (depth > 0 && action == path[depth - 1].inverse())) {
+                    continue;
+                }
+                if (!scratch.apply(agentIndex, action)) {
+                    continue;
+                }
+                if ((++this.nodes & 0xFFFFF) == 0) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        this.count();
+                        return null;
+                    }
+                    System.err.format("#Nodes: %,d, Threshold: %d, Depth: %d, Time: %3.3f s\n%s\n", this.nodes,
+                            threshold, depth, (System.nanoTime() - startTime) / 1_000_000_000d, Memory.stringRep());
+                }
+                int g = depth + 1;
+                if ((level.deadlocks != null && this.deadlocked(scratch, agentIndex, action))
+                        || !this.visit(scratch.fingerprint(), g)) {
+                    scratch.undo(agentIndex, action);
+                    continue;
+                }
+                int f = g + this.heuristic.H(scratch);
+                if (f > threshold) {
+                    nextThreshold = Math.min(nextThreshold, f);
+                    scratch.undo(agentIndex, action);
+                    continue;
+                }
+                this.record(scratch.fingerprint(), g);
+
+                if (depth + 1 == path.length) {
+                    path = Arrays.copyOf(path, 2 * path.length);
+                    next = Arrays.copyOf(next, 2 * next.length);
+                }
+                path[depth++] = action;
+                next[depth] = 0;
+                this.descents++;
+                if (scratch.isGoalStateForAgent(agentIndex)) {
+                    System.err.format("#Nodes: %,d, Threshold: %d, Time: %3.3f s\n", this.nodes, threshold,
+                            (System.nanoTime() - startTime) / 1_000_000_000d);
+                    State goal = root;
+                    for (int i = 0; i < depth; i++) {
+                        goal = new State(goal, path[i], agentIndex);
+                    }
+                    this.count();
+                    return goal;
+                }
+            }
+            threshold = nextThreshold;
+        }
+        this.count();
+        return null;
+    }
+
+    // Adds the nodes generated and searched below since the last call to the counters of ScratchState.
+    private void count() {
+        ScratchState.generated.add(this.nodes - this.counted);
+        ScratchState.expanded.add(this.descents - this.countedDescents);
+        this.counted = this.nodes;
+        this.countedDescents = this.descents;
+    }
+
+    // Whether the box moved by the Push or Pull action that led to state is deadlocked.
+    private boolean deadlocked(State state, int agentIndex, Action action) {
+        int agentCell = state.agentCell(agentIndex);
+        int cols = State.level.cols;
+        if (action.type == ActionType.Push) {
+            return State.level.deadlocks.isDeadlocked(state, agentCell + action.boxRowDelta * cols
+                    + action.boxColDelta);
+        } else if (action.type == ActionType.Pull) {
+            return State.level.deadlocks.isDeadlocked(state, agentCell - action.agentRowDelta * cols
+                    - action.agentColDelta);
+        }
+        return false;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & this.mask;
+    }
+
+    // Whether a state with this fingerprint reached with g is not pruned by the table.
+    private boolean visit(long key, int g) {
+        int i = this.slot(key);
+        long entry = this.entries[i];
+        return this.keys[i] != key || (int) (entry >>> 32) != this.tag || (int) entry > g;
+    }
+
+    private void record(long key, int g) {
+        int i = this.slot(key);
+        this.keys[i] = key;
+        this.entries[i] = ((long) this.tag << 32) | g;
+    }
+}
@@ -0,0 +1,263 @@
+package searchclient;
+
+import java.util.Arrays;
+
+// The static part of a level, shared by every State of a search. States only store the cells of the agents and
+// boxes, as indices into the row-major grid described here.
+public class Level {
+    private static final int[] ROW_DELTAS = { -1, 1, 0, 0 }; // N, S, W, E
+    private static final int[] COL_DELTAS = { 0, 0, -1, 1 };
+
+    public final int rows;
+    public final int cols;
+    public final boolean[][] walls;
+    public final char[][] goals;
+    public final Color[] agentColors;
+    public final Color[] boxColors;
+    public final int numAgents;
+    public final int numBoxes;
+    // Letter of each box index. Boxes are sorted by letter, so all boxes of one letter form the group
+    // [boxGroupStart[b], boxGroupEnd[b]) of box indices.
+    public final char[] boxLetters;
+    public final int[] boxGroupStart;
+    public final int[] boxGroupEnd;
+    // Goal cell of each agent, or -1 if the agent has no goal.
+    public final int[] agentGoalCells;
+    // Box goals, as parallel arrays of cell and letter.
+    public final int[] boxGoalCells;
+    public final char[] boxGoalLetters;
+
+    // Zobrist keys for an agent or a box letter standing on a cell. A state's hash is the xor of the keys of all its
+    // agents and boxes, so it can be updated for each moved object in O(1).
+    private final long[] agentKeys;
+    private final long[] boxKeys;
+
+    // The cell next to each cell to the N, S, W and E, at neighbours[4 * cell + d], or -1 for walls and the outside.
+    public final int[] neighbours;
+    // Cell offsets of the agent's and the box's displacement in each action, by ordinal.
+    public final int[] agentDeltas;
+    public final int[] boxDeltas;
+    // For each cell, the actions that the walls do not rule out for an agent standing there, as a bitmask over
+    // Action ordinals, so that only the agents and boxes have to be checked during search. 0 on walls.
+    public final int[] feasibleActions;
+
+    private DistanceMap distances; // Distances between free cells, built on first use
+    private LevelGraph graph; // The abstract graph for -hpa, built on first use
+    public Deadlocks deadlocks; // Deadlock detection for box moves, set up by analyze() unless switched off
+
+    public Level(int numAgents, Color[] agentColors, boolean[][] walls, char[][] boxes, Color[] boxColors,
+            char[][] goals) {
+        this(numAgents, agentColors, walls, Level.letterCounts(boxes), boxColors, goals);
+    }
+
+    // As above, but with the number of boxes of each letter instead of the grid of boxes, which is all the level
+    // needs of them. walls and goals are kept, not copied.
+    public Level(int numAgents, Color[] agentColors, boolean[][] walls, int[] letterCounts, Color[] boxColors,
+            char[][] goals) {
+        this.rows = walls.length;
+        this.cols = walls[0].length;
+        if (this.rows * this.cols > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Level has more than " + Short.MAX_VALUE + " cells.");
+        }
+        this.walls = walls;
+        this.goals = goals;
+        this.agentColors = agentColors;
+        this.boxColors = boxColors;
+        this.numAgents = numAgents;
+
+        // Collect box letters in letter order
+        int numBoxes = 0;
+        for (int count : letterCounts) {
+            numBoxes += count;
+        }
+        this.numBoxes = numBoxes;
+        this.boxLetters = new char[this.numBoxes];
+        this.boxGroupStart = new int[this.numBoxes];
+        this.boxGroupEnd = new int[this.numBoxes];
+        for (int l = 0, start = 0; l < 26; start += letterCounts[l++]) {
+            Arrays.fill(this.boxLetters, start, start + letterCounts[l], (char) ('A' + l));
+            Arrays.fill(this.boxGroupStart, start, start + letterCounts[l], start);
+            Arrays.fill(this.boxGroupEnd, start, start + letterCounts[l], start + letterCounts[l]);
+        }
+
+        // Collect goals
+        this.agentGoalCells = new int[numAgents];
+        Arrays.fill(this.agentGoalCells, -1);
+        int numBoxGoals = 0;
+        for (int row = 0; row < this.rows; row++) {
+            for (int col = 0; col < goals[row].length; col++) {
+                char goal = goals[row][col];
+                if ('0' <= goal && goal <= '9' && goal - '0' < numAgents) {
+                    this.agentGoalCells[goal - '0'] = this.cell(row, col);
+                } else if ('A' <= goal && goal <= 'Z') {
+                    numBoxGoals++;
+                }
+            }
+        }
+        this.boxGoalCells = new int[numBoxGoals];
+        this.boxGoalLetters = new char[numBoxGoals];
+        int i = 0;
+        for (int row = 0; row < this.rows; row++) {
+            for (int col = 0; col < goals[row].length; col++) {
+                char goal = goals[row][col];
+                if ('A' <= goal && goal <= 'Z') {
+                    this.boxGoalCells[i] = this.cell(row, col);
+                    this.boxGoalLetters[i] = goal;
+                    i++;
+                }
+            }
+        }
+
+        int numCells = this.rows * this.cols;
+        this.agentKeys = new long[numAgents * numCells];
+        for (int k = 0; k < this.agentKeys.length; k++) {
+            this.agentKeys[k] = Level.zobristKey(k);
+        }
+        // Only letters that boxes have are ever looked up
+        this.boxKeys = new long[26 * numCells];
+        for (int l = 0; l < 26; l++) {
+            for (int k = l * numCells; letterCounts[l] > 0 && k < (l + 1) * numCells; k++) {
+                this.boxKeys[k] = Level.zobristKey(this.agentKeys.length + k);
+            }
+        }
+
+        this.neighbours = new int[4 * numCells];
+        int[] freeMasks = new int[numCells]; // Bit d set if the neighbour in direction d is free
+        Arrays.fill(this.neighbours, -1);
+        for (int row = 0; row < this.rows; row++) {
+            for (int col = 0; col < this.cols; col++) {
+                int cell = this.cell(row, col);
+                for (int d = 0; d < 4; d++) {
+                    int r = row + ROW_DELTAS[d];
+                    int c = col + COL_DELTAS[d];
+                    if (r >= 0 && r < this.rows && c >= 0 && c < this.cols && !walls[r][c]) {
+                        this.neighbours[4 * cell + d] = cell + ROW_DELTAS[d] * this.cols + COL_DELTAS[d];
+                        freeMasks[cell] |= 1 << d;
+                    }
+                }
+            }
+        }
+
+        // Which actions the walls allow only depends on which neighbours of the agent's cell are free, and for a push,
+        // on which neighbours of the box's cell are. So the masks of all 16 neighbourhoods are tabulated, the latter
+        // for each direction the agent may push in.
+        Action[] actions = Action.values();
+        this.agentDeltas = new int[actions.length];
+        this.boxDeltas = new int[actions.length];
+        int[] byNeighbourhood = new int[16]; // Moves, pulls and NoOp
+        int[][] pushes = new int[4][16]; // By agent direction, and the neighbourhood of the box's cell
+        for (Action action : actions) {
+            this.agentDeltas[action.ordinal()] = action.agentRowDelta * this.cols + action.agentColDelta;
+            this.boxDeltas[action.ordinal()] = action.boxRowDelta * this.cols + action.boxColDelta;
+            int a = Level.direction(action.agentRowDelta, action.agentColDelta);
+            int b = Level.direction(action.boxRowDelta, action.boxColDelta);
+            for (int mask = 0; mask < 16; mask++) {
+                switch (action.type) {
+                    case Move:
+                        byNeighbourhood[mask] |= (mask >> a & 1) << action.ordinal();
+                        break;
+                    case Pull:
+                        // The box comes from the side opposite to b
+                        byNeighbourhood[mask] |= (mask >> a & mask >> (b ^ 1) & 1) << action.ordinal();
+                        break;
+                    case Push:
+                        pushes[a][mask] |= (mask >> b & 1) << action.ordinal();
+                        break;
+                    default:
+                        byNeighbourhood[mask] |= 1 << action.ordinal();
+                }
+            }
+        }
+        this.feasibleActions = new int[numCells];
+        for (int cell = 0; cell < numCells; cell++) {
+            if (this.walls[this.row(cell)][this.col(cell)]) {
+                continue;
+            }
+            int mask = freeMasks[cell];
+            int feasible = byNeighbourhood[mask];
+            for (int a = 0; a < 4; a++) {
+                if ((mask >> a & 1) != 0) {
+                    feasible |= pushes[a][freeMasks[this.neighbours[4 * cell + a]]];
+                }
+            }
+            this.feasibleActions[cell] = feasible;
+        }
+    }
+
+    // Number of boxes of each letter in the grid of boxes.
+    private static int[] letterCounts(char[][] boxes) {
+        int[] letterCounts = new int[26];
+        for (char[] row : boxes) {
+            for (char box : row) {
+                if (box != 0) {
+                    letterCounts[box - 'A']++;
+                }
+            }
+        }
+        return letterCounts;
+    }
+
+    // Index of the displacement (rowDelta, colDelta) among the neighbours of a cell, or -1 if there is none.
+    private static int direction(int rowDelta, int colDelta) {
+        for (int d = 0; d < 4; d++) {
+            if (ROW_DELTAS[d] == rowDelta && COL_DELTAS[d] == colDelta) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    // The SplitMix64 output for index, so that each key is computed on its own in a few operations, rather than in
+    // sequence from a shared generator.
+    private static long zobristKey(long index) {
+        long z = (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public long agentKey(int agent, int cell) {
+        return this.agentKeys[agent * this.rows * this.cols + cell];
+    }
+
+    public long boxKey(char letter, int cell) {
+        return this.boxKeys[(letter - 'A') * this.rows * this.cols + cell];
+    }
+
+    public int cell(int row, int col) {
+        return row * this.cols + col;
+    }
+
+    public int row(int cell) {
+        return cell / this.cols;
+    }
+
+    public int col(int cell) {
+        return cell % this.cols;
+    }
+
+    // Precomputes the static tables used during search, so that their cost is not charged to the search itself.
+    public void analyze() {
+        if (DistanceMap.hierarchical) {
+            this.getGraph();
+        }
+        this.getDistances();
+        if (Deadlocks.deadCells || Deadlocks.freeze) {
+            this.deadlocks = new Deadlocks(this);
+        }
+    }
+
+    public DistanceMap getDistances() {
+        if (this.distances == null) {
+            this.distances = new DistanceMap(this);
+        }
+        return this.distances;
+    }
+
+    public LevelGraph getGraph() {
+        if (this.graph == null) {
+            this.graph = new LevelGraph(this);
+        }
+        return this.graph;
+    }
+}
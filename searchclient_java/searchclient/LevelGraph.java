@@ -0,0 +1,333 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+// An abstract graph of a level's free cells for approximate distances, ignoring boxes and agents, as in HPA*: the grid
+// is cut into sectors of SECTOR x SECTOR cells, and the connected free cells within a sector form a cluster. Where the
+// cells of two clusters border each other, one entrance is placed in the middle of the border, or one at each end of a
+// long border. The distances from every cell to the entrances of its cluster, and between all entrances, are computed
+// once, so a query only combines those of the two clusters involved. The result is the length of a real path, but not
+// always a shortest one, as paths are made to cross sector borders at the entrances.
+public class LevelGraph {
+    private static final int SECTOR = 10;
+    private static final int LONG_BORDER = 6; // Borders at least this long get an entrance at each end
+
+    private final Level level;
+    private final int[] cluster; // Cluster of each cell, -1 for walls
+    private final int[] localIndex; // Index of each cell among the cells of its cluster
+    private final int[][] clusterCells;
+    private final int[][] entrances; // Entrance nodes of each cluster
+    private final short[][][] entranceDistances; // From the k-th entrance of a cluster to each of its cells, or -1
+    private final int[] nodeCell; // Cell of each entrance node
+    private final short[] nodeDistances; // Between all pairs of entrance nodes, at [from * numNodes + to], or -1
+    private final ThreadLocal<int[]> queues; // Queue of cluster-local searches, reused between queries
+    private final ThreadLocal<short[]> scratch; // Distances of cluster-local searches, all -1 between queries
+
+    public LevelGraph(Level level) {
+        this.level = level;
+        int numCells = level.rows * level.cols;
+        int[] queue = new int[numCells];
+
+        // Clusters
+        int sectorCols = (level.cols + SECTOR - 1) / SECTOR;
+        this.cluster = new int[numCells];
+        Arrays.fill(this.cluster, -1);
+        this.localIndex = new int[numCells];
+        ArrayList<int[]> clusters = new ArrayList<>();
+        for (int cell = 0; cell < numCells; cell++) {
+            if (this.isFree(cell) && this.cluster[cell] < 0) {
+                int sector = this.sector(cell, sectorCols);
+                int size = this.fill(cell, clusters.size(), this.cluster, queue,
+                        next -> this.sector(next, sectorCols) == sector);
+                int[] cells = Arrays.copyOf(queue, size);
+                for (int i = 0; i < size; i++) {
+                    this.localIndex[cells[i]] = i;
+                }
+                clusters.add(cells);
+            }
+        }
+        this.clusterCells = clusters.toArray(new int[0][]);
+        int maxClusterSize = Arrays.stream(this.clusterCells).mapToInt(cells -> cells.length).max().orElse(0);
+
+        // Entrances, as pairs of neighbouring cells of different clusters joined by an edge of length 1
+        int[] nodeOf = new int[numCells];
+        Arrays.fill(nodeOf, -1);
+        ArrayList<Integer> cells = new ArrayList<>();
+        ArrayList<int[]> transitions = new ArrayList<>();
+        for (int row = 0; row + 1 < level.rows; row++) {
+            this.addEntrances(level.cell(row, 0), 1, level.cols, level.cols, nodeOf, cells, transitions);
+        }
+        for (int col = 0; col + 1 < level.cols; col++) {
+            this.addEntrances(level.cell(0, col), level.cols, 1, level.rows, nodeOf, cells, transitions);
+        }
+        int numNodes = cells.size();
+        this.nodeCell = cells.stream().mapToInt(Integer::intValue).toArray();
+        int[] rank = new int[numNodes]; // Index of each node among the entrances of its cluster
+        int[] entranceCount = new int[this.clusterCells.length];
+        for (int node = 0; node < numNodes; node++) {
+            rank[node] = entranceCount[this.cluster[this.nodeCell[node]]]++;
+        }
+        this.entrances = new int[this.clusterCells.length][];
+        this.entranceDistances = new short[this.clusterCells.length][][];
+        for (int c = 0; c < this.clusterCells.length; c++) {
+            this.entrances[c] = new int[entranceCount[c]];
+            this.entranceDistances[c] = new short[entranceCount[c]][];
+        }
+        for (int node = 0; node < numNodes; node++) {
+            int c = this.cluster[this.nodeCell[node]];
+            this.entrances[c][rank[node]] = node;
+            this.entranceDistances[c][rank[node]] = this.clusterBfs(c, this.nodeCell[node], queue);
+        }
+
+        // Edges between the entrances of each cluster, and across each transition, as (node, length) pairs
+        int[][] edges = new int[numNodes][];
+        int[] transitionCount = new int[numNodes];
+        for (int[] transition : transitions) {
+            transitionCount[transition[0]]++;
+            transitionCount[transition[1]]++;
+        }
+        for (int node = 0; node < numNodes; node++) {
+            int c = this.cluster[this.nodeCell[node]];
+            edges[node] = new int[2 * (this.entrances[c].length - 1 + transitionCount[node])];
+            int k = 0;
+            for (int other : this.entrances[c]) {
+                short distance = this.entranceDistances[c][rank[node]][this.localIndex[this.nodeCell[other]]];
+                if (other != node && distance >= 0) {
+                    edges[node][k++] = other;
+                    edges[node][k++] = distance;
+                }
+            }
+            edges[node] = Arrays.copyOf(edges[node], k);
+        }
+        for (int[] transition : transitions) {
+            for (int side = 0; side < 2; side++) {
+                int[] list = edges[transition[side]];
+                list = Arrays.copyOf(list, list.length + 2);
+                list[list.length - 2] = transition[1 - side];
+                list[list.length - 1] = 1;
+                edges[transition[side]] = list;
+            }
+        }
+
+        this.nodeDistances = new short[numNodes * numNodes];
+        IntStream.range(0, numNodes).parallel().forEach(node -> this.dijkstra(node, edges));
+        this.queues = ThreadLocal.withInitial(() -> new int[maxClusterSize]);
+        this.scratch = ThreadLocal.withInitial(() -> {
+            short[] distances = new short[maxClusterSize];
+            Arrays.fill(distances, (short) -1);
+            return distances;
+        });
+    }
+
+    private boolean isFree(int cell) {
+        return !this.level.walls[this.level.row(cell)][this.level.col(cell)];
+    }
+
+    private int sector(int cell, int sectorCols) {
+        return this.level.row(cell) / SECTOR * sectorCols + this.level.col(cell) / SECTOR;
+    }
+
+    // Labels the unlabelled cells connected to start through cells accepted by joins with id, leaves them in queue in
+    // the order reached, and returns their number.
+    private int fill(int start, int id, int[] labels, int[] queue, IntPredicate joins) {
+        int head = 0;
+        int tail = 0;
+        labels[start] = id;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            for (int d = 0; d < 4; d++) {
+                int next = this.level.neighbours[4 * cell + d];
+                if (next >= 0 && labels[next] < 0 && joins.test(next)) {
+                    labels[next] = id;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return tail;
+    }
+
+    // Adds entrances along the border between the line of length cells from first, each along from the one before,
+    // and the line next to it, across from it.
+    private void addEntrances(int first, int along, int across, int length, int[] nodeOf, ArrayList<Integer> cells,
+            ArrayList<int[]> transitions) {
+        int start = -1; // Start of the current stretch of the border between the same two clusters
+        for (int i = 0; i <= length; i++) {
+            int cell = first + i * along;
+            boolean crossing = i < length && this.isFree(cell) && this.isFree(cell + across)
+                    && this.cluster[cell] != this.cluster[cell + across];
+            if (start >= 0) {
+                int from = first + start * along;
+                if (crossing && this.cluster[cell] == this.cluster[from]
+                        && this.cluster[cell + across] == this.cluster[from + across]) {
+                    continue;
+                }
+                int stretch = i - start;
+                if (stretch < LONG_BORDER) {
+                    int middle = from + stretch / 2 * along;
+                    this.addTransition(middle, middle + across, nodeOf, cells, transitions);
+                } else {
+                    int last = from + (stretch - 1) * along;
+                    this.addTransition(from, from + across, nodeOf, cells, transitions);
+                    this.addTransition(last, last + across, nodeOf, cells, transitions);
+                }
+                start = -1;
+            }
+            if (crossing) {
+                start = i;
+            }
+        }
+    }
+
+    private void addTransition(int a, int b, int[] nodeOf, ArrayList<Integer> cells, ArrayList<int[]> transitions) {
+        for (int cell : new int[] { a, b }) {
+            if (nodeOf[cell] < 0) {
+                nodeOf[cell] = cells.size();
+                cells.add(cell);
+            }
+        }
+        transitions.add(new int[] { nodeOf[a], nodeOf[b] });
+    }
+
+    // Distances from start to the cells of cluster c, by local index, without leaving the cluster.
+    private short[] clusterBfs(int c, int start, int[] queue) {
+        short[] distances = new short[this.clusterCells[c].length];
+        Arrays.fill(distances, (short) -1);
+        int head = 0;
+        int tail = 0;
+        distances[this.localIndex[start]] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            short next = (short) (distances[this.localIndex[cell]] + 1);
+            for (int d = 0; d < 4; d++) {
+                int neighbour = this.level.neighbours[4 * cell + d];
+                if (neighbour >= 0 && this.cluster[neighbour] == c && distances[this.localIndex[neighbour]] < 0) {
+                    distances[this.localIndex[neighbour]] = next;
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+        return distances;
+    }
+
+    // Fills the row of source in nodeDistances, with Dijkstra's algorithm on a binary heap of (distance << 32 | node).
+    private void dijkstra(int source, int[][] edges) {
+        int numNodes = this.nodeCell.length;
+        int offset = source * numNodes;
+        Arrays.fill(this.nodeDistances, offset, offset + numNodes, (short) -1);
+        int[] best = new int[numNodes];
+        Arrays.fill(best, Integer.MAX_VALUE);
+        long[] heap = new long[16];
+        int size = 0;
+        best[source] = 0;
+        heap[size++] = source;
+        while (size > 0) {
+            long top = heap[0];
+            heap[0] = heap[--size];
+            for (int i = 0; 2 * i + 1 < size;) {
+                int child = 2 * i + 2 < size && heap[2 * i + 2] < heap[2 * i + 1] ? 2 * i + 2 : 2 * i + 1;
+                if (heap[i] <= heap[child]) {
+                    break;
+                }
+                long swap = heap[i];
+                heap[i] = heap[child];
+                heap[child] = swap;
+                i = child;
+            }
+            int node = (int) top;
+            int distance = (int) (top >>> 32);
+            if (this.nodeDistances[offset + node] >= 0) {
+                continue;
+            }
+            this.nodeDistances[offset + node] = (short) distance;
+            for (int k = 0; k < edges[node].length; k += 2) {
+                int next = edges[node][k];
+                int length = distance + edges[node][k + 1];
+                if (length < best[next]) {
+                    best[next] = length;
+                    if (size == heap.length) {
+                        heap = Arrays.copyOf(heap, 2 * size);
+                    }
+                    int i = size++;
+                    heap[i] = (long) length << 32 | next;
+                    while (i > 0 && heap[(i - 1) / 2] > heap[i]) {
+                        long swap = heap[i];
+                        heap[i] = heap[(i - 1) / 2];
+                        heap[(i - 1) / 2] = swap;
+                        i = (i - 1) / 2;
+                    }
+                }
+            }
+        }
+    }
+
+    // The length of a path between the cells from and to that crosses sector borders only at entrances, which is at
+    // least their distance, or DistanceMap.UNREACHABLE if there is none. Costs O(e^2) for clusters of e entrances,
+    // plus a search of their cluster when both cells are in the same one.
+    public int abstractDistance(int from, int to) {
+        int fromCluster = this.cluster[from];
+        int toCluster = this.cluster[to];
+        if (fromCluster < 0 || toCluster < 0) {
+            return DistanceMap.UNREACHABLE;
+        }
+        int best = fromCluster == toCluster ? this.clusterDistance(fromCluster, from, to) : DistanceMap.UNREACHABLE;
+        int numNodes = this.nodeCell.length;
+        int[] fromEntrances = this.entrances[fromCluster];
+        int[] toEntrances = this.entrances[toCluster];
+        for (int i = 0; i < fromEntrances.length; i++) {
+            int toEntrance = this.entranceDistances[fromCluster][i][this.localIndex[from]];
+            if (toEntrance < 0 || toEntrance >= best) {
+                continue;
+            }
+            int offset = fromEntrances[i] * numNodes;
+            for (int j = 0; j < toEntrances.length; j++) {
+                int between = this.nodeDistances[offset + toEntrances[j]];
+                int fromEntrance = this.entranceDistances[toCluster][j][this.localIndex[to]];
+                if (between >= 0 && fromEntrance >= 0) {
+                    best = Math.min(best, toEntrance + between + fromEntrance);
+                }
+            }
+        }
+        return best;
+    }
+
+    // The distance from from to to within cluster c, or DistanceMap.UNREACHABLE.
+    private int clusterDistance(int c, int from, int to) {
+        int[] queue = this.queues.get();
+        short[] distances = this.scratch.get();
+        int head = 0;
+        int tail = 0;
+        distances[this.localIndex[from]] = 0;
+        queue[tail++] = from;
+        int distance = DistanceMap.UNREACHABLE;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (cell == to) {
+                distance = distances[this.localIndex[cell]];
+                break;
+            }
+            short next = (short) (distances[this.localIndex[cell]] + 1);
+            for (int d = 0; d < 4; d++) {
+                int neighbour = this.level.neighbours[4 * cell + d];
+                if (neighbour >= 0 && this.cluster[neighbour] == c && distances[this.localIndex[neighbour]] < 0) {
+                    distances[this.localIndex[neighbour]] = next;
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+        for (int i = 0; i < tail; i++) {
+            distances[this.localIndex[queue[i]]] = -1;
+        }
+        return distance;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Level graph: %d clusters, %d entrances", this.clusterCells.length,
+                this.nodeCell.length);
+    }
+}
@@ -0,0 +1,207 @@
+package searchclient;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Reads a level in the format the server sends, from the server's stream or from a .lvl file, in one pass over its
+// bytes. Lines go into a single reused buffer and are never decoded into strings, apart from headers and color names.
+// The rows of the #initial and #goal sections are kept as raw bytes until the end of the level, when the walls and
+// goals are written into the tables of the Level and the agents and boxes into the packed cells of the initial
+// state, without intermediate grids. Sections may come in any order, and unknown ones are skipped. Nothing after
+// the #end line is read, so the server's stream can go on to carry its replies to the plan.
+public class LevelParser {
+    private final InputStream in;
+    private byte[] line = new byte[256];
+    private int length; // Of the current line, without its line break
+    private final Color[] agentColors = new Color[10];
+    private final Color[] boxColors = new Color[26];
+    private Grid initial;
+    private Grid goal;
+
+    private LevelParser(InputStream in) {
+        this.in = in;
+    }
+
+    public static State parse(File file)
+            throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            return LevelParser.parse(in);
+        }
+    }
+
+    // Reads a byte at a time, so in should be buffered.
+    public static State parse(InputStream in)
+            throws IOException {
+        return new LevelParser(in).read();
+    }
+
+    private State read()
+            throws IOException {
+        boolean colors = false;
+        Grid grid = null; // Section the rows read belong to, if it is a grid
+        while (this.readLine()) {
+            if (this.length > 0 && this.line[0] == '#') {
+                colors = false;
+                grid = null;
+                switch (new String(this.line, 1, this.length - 1, StandardCharsets.US_ASCII).strip()) {
+                    case "colors":
+                        colors = true;
+                        break;
+                    case "initial":
+                        grid = this.initial = new Grid();
+                        break;
+                    case "goal":
+                        grid = this.goal = new Grid();
+                        break;
+                    case "end":
+                        return this.build();
+                    default:
+                        break; // #domain, #levelname and anything else are skipped
+                }
+            } else if (colors) {
+                this.readColors();
+            } else if (grid != null) {
+                grid.add(this.line, this.length);
+            }
+        }
+        return this.build(); // A file may end without #end
+    }
+
+    // Reads the next line into line, and returns false at the end of the stream.
+    private boolean readLine()
+            throws IOException {
+        this.length = 0;
+        int b = this.in.read();
+        if (b < 0) {
+            return false;
+        }
+        for (; b >= 0 && b != '\n'; b = this.in.read()) {
+            if (b == '\r') {
+                continue;
+            }
+            if (this.length == this.line.length) {
+                this.line = Arrays.copyOf(this.line, 2 * this.length);
+            }
+            this.line[this.length++] = (byte) b;
+        }
+        return true;
+    }
+
+    // A line such as "blue: 0, A, B". Agents and box letters are single characters, so every digit and capital
+    // letter after the colon names one.
+    private void readColors()
+            throws IOException {
+        int colon = 0;
+        while (colon < this.length && this.line[colon] != ':') {
+            colon++;
+        }
+        if (colon == this.length) {
+            return; // Blank line
+        }
+        String name = new String(this.line, 0, colon, StandardCharsets.US_ASCII).strip();
+        Color color = Color.fromString(name);
+        if (color == null) {
+            throw new IOException("Unknown color: " + name);
+        }
+        for (int i = colon + 1; i < this.length; i++) {
+            byte c = this.line[i];
+            if ('0' <= c && c <= '9') {
+                this.agentColors[c - '0'] = color;
+            } else if ('A' <= c && c <= 'Z') {
+                this.boxColors[c - 'A'] = color;
+            }
+        }
+    }
+
+    private State build()
+            throws IOException {
+        if (this.initial == null || this.initial.rows == 0) {
+            throw new IOException("Level has no #initial section.");
+        }
+        int numRows = this.initial.rows;
+        int numCols = this.initial.cols;
+        // The walls and goals go straight into the tables the level keeps; of the boxes only the letters are counted
+        // at first, since their indices depend on how many there are of each letter
+        boolean[][] walls = new boolean[numRows][numCols];
+        char[][] goals = new char[numRows][numCols];
+        int[] letterCounts = new int[26];
+        int numAgents = 0;
+        int[] agentCells = new int[10];
+        for (int row = 0; row < numRows; row++) {
+            int start = this.initial.starts[row];
+            int end = this.initial.starts[row + 1];
+            for (int i = start; i < end; i++) {
+                byte c = this.initial.data[i];
+                if ('0' <= c && c <= '9') {
+                    agentCells[c - '0'] = row * numCols + i - start;
+                    numAgents++;
+                } else if ('A' <= c && c <= 'Z') {
+                    letterCounts[c - 'A']++;
+                } else if (c == '+') {
+                    walls[row][i - start] = true;
+                }
+            }
+        }
+        if (this.goal != null) {
+            for (int row = 0; row < Math.min(this.goal.rows, numRows); row++) {
+                int start = this.goal.starts[row];
+                int end = Math.min(this.goal.starts[row + 1], start + numCols);
+                for (int i = start; i < end; i++) {
+                    byte c = this.goal.data[i];
+                    if (('0' <= c && c <= '9') || ('A' <= c && c <= 'Z')) {
+                        goals[row][i - start] = (char) c;
+                    }
+                }
+            }
+        }
+        Level level = new Level(numAgents, this.agentColors, walls, letterCounts, this.boxColors, goals);
+        State.level = level;
+
+        short[] cells = new short[numAgents + level.numBoxes];
+        for (int i = 0; i < numAgents; i++) {
+            cells[i] = (short) agentCells[i];
+        }
+        // Boxes are sorted by letter, then row-major within a letter, so a second pass over the rows places them all
+        int[] next = new int[26]; // Index of the next box of each letter in cells
+        for (int b = level.numBoxes - 1; b >= 0; b--) {
+            next[level.boxLetters[b] - 'A'] = numAgents + b;
+        }
+        for (int row = 0; row < numRows; row++) {
+            int start = this.initial.starts[row];
+            int end = this.initial.starts[row + 1];
+            for (int i = start; i < end; i++) {
+                byte c = this.initial.data[i];
+                if ('A' <= c && c <= 'Z') {
+                    cells[next[c - 'A']++] = (short) level.cell(row, i - start);
+                }
+            }
+        }
+        return new State(cells);
+    }
+
+    // The rows of a grid section, back to back, with row r at [starts[r], starts[r + 1]).
+    private static class Grid {
+        byte[] data = new byte[4096];
+        int[] starts = new int[64];
+        int rows = 0;
+        int cols = 0;
+
+        void add(byte[] line, int length) {
+            int end = this.starts[this.rows];
+            if (end + length > this.data.length) {
+                this.data = Arrays.copyOf(this.data, Math.max(2 * this.data.length, end + length));
+            }
+            System.arraycopy(line, 0, this.data, end, length);
+            if (this.rows + 2 > this.starts.length) {
+                this.starts = Arrays.copyOf(this.starts, 2 * this.starts.length);
+            }
+            this.starts[++this.rows] = end + length;
+            this.cols = Math.max(this.cols, length);
+        }
+    }
+}
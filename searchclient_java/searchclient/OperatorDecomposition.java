@@ -0,0 +1,279 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+// Joint planning with operator decomposition (OD) and independence detection (ID). Agents start out in groups of
+// their own, each planned in an AgentPlanner projection of the level without the other groups. The group plans are
+// then simulated together, and the two groups of the first conflict are merged and planned jointly, until the plans
+// no longer conflict. A group is planned with A* over joint states in which each ply assigns the action of one agent
+// of the group, so that a node has at most one agent's actions as children instead of the product of all of them. An
+// action must be applicable both where the time step started and after the actions assigned before it, which is
+// exactly when the server accepts the joint action; the state is only deduplicated once every agent has acted. Plans
+// are short rather than optimal, as the per-agent estimates are not admissible.
+public class OperatorDecomposition {
+    private Level level;
+    private State initialState;
+    private AgentPlanner planner;
+    private long expanded = 0;
+
+    // Whether level is supported, printing the reason if it is not.
+    public static boolean supports(Level level) {
+        return AgentPlanner.supports(level);
+    }
+
+    public Action[][] search(State initialState) {
+        this.level = State.level;
+        this.initialState = initialState;
+        this.planner = new AgentPlanner(initialState);
+        long startTime = System.nanoTime();
+        int numAgents = this.level.numAgents;
+
+        // Group of each agent, and the agents and plan of each group
+        int[] groupOf = new int[numAgents];
+        ArrayList<int[]> groups = new ArrayList<>();
+        ArrayList<Action[][]> plans = new ArrayList<>();
+        for (int agent = 0; agent < numAgents; agent++) {
+            groupOf[agent] = agent;
+            groups.add(new int[] { agent });
+            plans.add(this.plan(groups.get(agent)));
+            if (plans.get(agent) == null) {
+                System.err.format("OD: agent %d cannot reach its goals on its own.\n", agent);
+                return null;
+            }
+        }
+
+        while (true) {
+            Action[][] joint = this.combine(groups, plans);
+            int[] conflict = this.firstConflict(joint);
+            if (conflict == null) {
+                System.err.format("OD: %d groups without conflicts, %,d expansions. Time: %3.3f s\n",
+                        groups.stream().filter(group -> group.length > 0).count(), this.expanded,
+                        (System.nanoTime() - startTime) / 1_000_000_000d);
+                return joint;
+            }
+            // An empty group is left behind where the second one was, so group indices stay valid
+            int first = groupOf[conflict[0]];
+            int second = conflict[1] < 0 ? -1 : groupOf[conflict[1]];
+            int[] merged = groups.get(first);
+            for (int g = 0; g < groups.size(); g++) {
+                if (g != first && (g == second || second < 0)) {
+                    merged = OperatorDecomposition.union(merged, groups.get(g));
+                    groups.set(g, new int[0]);
+                    plans.set(g, new Action[0][0]);
+                }
+            }
+            for (int agent : merged) {
+                groupOf[agent] = first;
+            }
+            groups.set(first, merged);
+            System.err.format("OD: merging into group %s. Time: %3.3f s\n", Arrays.toString(merged),
+                    (System.nanoTime() - startTime) / 1_000_000_000d);
+            plans.set(first, this.plan(merged));
+            if (plans.get(first) == null) {
+                System.err.format("OD: group %s has no plan.\n", Arrays.toString(merged));
+                return null;
+            }
+        }
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] union = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, union, a.length, b.length);
+        Arrays.sort(union);
+        return union;
+    }
+
+    // The group plans as one joint plan, with agents whose plans have ended doing NoOp.
+    private Action[][] combine(ArrayList<int[]> groups, ArrayList<Action[][]> plans) {
+        int length = 0;
+        for (Action[][] plan : plans) {
+            length = Math.max(length, plan.length);
+        }
+        Action[][] joint = new Action[length][this.level.numAgents];
+        for (int t = 0; t < length; t++) {
+            Arrays.fill(joint[t], Action.NoOp);
+            for (int g = 0; g < groups.size(); g++) {
+                if (t < plans.get(g).length) {
+                    for (int i = 0; i < groups.get(g).length; i++) {
+                        joint[t][groups.get(g)[i]] = plans.get(g)[t][i];
+                    }
+                }
+            }
+        }
+        return joint;
+    }
+
+    // Simulates joint from the initial state, and returns the first agent whose action the server would reject
+    // together with the agent it collides with, which is -1 if it cannot be told. Returns null if there is none.
+    private int[] firstConflict(Action[][] joint) {
+        ScratchState base = new ScratchState(this.initialState);
+        ScratchState current = new ScratchState(this.initialState);
+        int[] claimed = new int[this.level.rows * this.level.cols]; // Agent + 1 moving onto or off each cell
+        ArrayList<Integer> touched = new ArrayList<>();
+        for (Action[] step : joint) {
+            for (int agent = 0; agent < step.length; agent++) {
+                Action action = step[agent];
+                int from = current.agentCell(agent);
+                int destination = from + this.level.agentDeltas[action.ordinal()];
+                int boxDelta = this.level.boxDeltas[action.ordinal()];
+                int entered = action.type == ActionType.Push ? destination + boxDelta : destination;
+                int boxFrom = action.type == ActionType.Push ? destination : from - boxDelta;
+                if (!base.isApplicable(agent, action) || !current.isApplicable(agent, action)) {
+                    int other = this.occupant(base, entered, agent);
+                    if (other < 0) {
+                        other = this.occupant(current, entered, agent);
+                    }
+                    if (other < 0) {
+                        other = claimed[entered] - 1;
+                    }
+                    if (other < 0 && action.type != ActionType.Move) {
+                        other = claimed[boxFrom] - 1;
+                    }
+                    return new int[] { agent, other == agent ? -1 : other };
+                }
+                current.applyAction(agent, action);
+                if (action.type != ActionType.NoOp) {
+                    claimed[entered] = agent + 1;
+                    touched.add(entered);
+                    if (action.type != ActionType.Move) {
+                        claimed[boxFrom] = agent + 1;
+                        touched.add(boxFrom);
+                    }
+                }
+            }
+            base.load(current);
+            for (int cell : touched) {
+                claimed[cell] = 0;
+            }
+            touched.clear();
+        }
+        return null;
+    }
+
+    // The agent other than agent that is on cell in state or moves the box there, or -1 if there is none.
+    private int occupant(State state, int cell, int agent) {
+        for (int other = 0; other < this.level.numAgents; other++) {
+            if (other != agent && state.agentCell(other) == cell) {
+                return other;
+            }
+        }
+        char box = state.boxLetterAt(cell);
+        int owner = box == 0 ? -1 : this.planner.owner(box);
+        return owner == agent ? -1 : owner;
+    }
+
+    // Plans the agents of group jointly, with A* over operator-decomposed states, in the projection of the level
+    // without the other agents. Returns the plan, with the actions of each time step in the order of group, or null
+    // if there is none.
+    private Action[][] plan(int[] group) {
+        State root = this.planner.projection(group);
+        PriorityQueue<Node> open = new PriorityQueue<>();
+        // Least g of each full state reached, kept in State.g of the full states, which otherwise counts plies
+        StateSet bestG = new StateSet(1024, SearchClient.verifyStates, true);
+        open.add(new Node(null, null, root, root, 0, 0, this.estimate(root, group)));
+        bestG.add(root);
+        long id = 0;
+        while (!open.isEmpty()) {
+            Node node = open.poll();
+            if ((++this.expanded & 0xFFFF) == 0 && Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            if (node.ply == 0) {
+                if (bestG.cost(node.state) < node.g) {
+                    continue; // Reached more cheaply since
+                }
+                if (this.reachedGoals(node.state, group)) {
+                    return OperatorDecomposition.extractPlan(node, group.length);
+                }
+            }
+            int agent = group[node.ply];
+            State base = node.base;
+            ScratchState.Filter filter = (parent, action, child) -> base.isApplicable(agent, action);
+            // Waiting costs nothing once an agent has reached its goals, so the plan's cost is the sum of the times
+            // at which the agents are done
+            int waitCost = this.planner.reachedGoals(base, agent) ? 0 : 1;
+            for (State child : ScratchState.forThread().expand(node.state, agent, null, filter)) {
+                Action action = child.getLeadingAction();
+                int g = node.g + (action == Action.NoOp ? waitCost : 1);
+                int ply = node.ply + 1 == group.length ? 0 : node.ply + 1;
+                if (ply == 0) {
+                    child.g = g;
+                    if (!bestG.addOrImprove(child)) {
+                        continue;
+                    }
+                }
+                Node next = new Node(node, action, ply == 0 ? child : base, child, ply, g,
+                        this.estimate(child, group));
+                next.id = ++id;
+                open.add(next);
+            }
+        }
+        return null;
+    }
+
+    private int estimate(State state, int[] group) {
+        int total = 0;
+        for (int agent : group) {
+            total += this.planner.estimate(state, agent);
+        }
+        return total;
+    }
+
+    private boolean reachedGoals(State state, int[] group) {
+        for (int agent : group) {
+            if (!this.planner.reachedGoals(state, agent)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Action[][] extractPlan(Node node, int groupSize) {
+        ArrayList<Action> actions = new ArrayList<>();
+        for (; node.parent != null; node = node.parent) {
+            actions.add(node.action);
+        }
+        Action[][] plan = new Action[actions.size() / groupSize][groupSize];
+        for (int i = 0; i < actions.size(); i++) {
+            int k = actions.size() - 1 - i;
+            plan[k / groupSize][k % groupSize] = actions.get(i);
+        }
+        return plan;
+    }
+
+    // A node of the search for a group: state is base, the state at the start of the time step, with the actions of
+    // the first ply agents of the group applied.
+    private static class Node
+            implements Comparable<Node> {
+        final Node parent;
+        final Action action; // Action of the agent that acted last, or null at the root
+        final State base;
+        final State state;
+        final int ply;
+        final int g;
+        final int h;
+        long id;
+
+        Node(Node parent, Action action, State base, State state, int ply, int g, int h) {
+            this.parent = parent;
+            this.action = action;
+            this.base = base;
+            this.state = state;
+            this.ply = ply;
+            this.g = g;
+            this.h = h;
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            if (this.g + this.h != other.g + other.h) {
+                return Integer.compare(this.g + this.h, other.g + other.h);
+            } else if (this.h != other.h) {
+                return Integer.compare(this.h, other.h);
+            }
+            return Long.compare(this.id, other.id);
+        }
+    }
+}
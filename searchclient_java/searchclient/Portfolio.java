@@ -0,0 +1,148 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Runs several search strategies at once, each on its own thread, and returns the first plan any of them finds. The
+// others are then cancelled by interrupting their threads, which the searches check between expansions. All members
+// share the heap: when it fills beyond memoryBudget of the maximum heap, the last member in portfolio order that is
+// still running is cancelled, so members should be listed from cheapest to most memory-hungry.
+public class Portfolio {
+    public static final String DEFAULT_MEMBERS = "greedy,wastar5,wastar2,astar";
+
+    // Fraction of the maximum heap the members may use together.
+    public static double memoryBudget = 0.85;
+
+    private static final long POLL_MILLIS = 100;
+    private static final long CANCEL_INTERVAL_MILLIS = 1000; // Time for the heap to shrink after a cancellation
+
+    private final String[] members;
+
+    // members is a comma-separated list of bfs, dfs, greedy, astar and wastar<w>, where w defaults to 5.
+    public Portfolio(String members) {
+        this.members = members.toLowerCase(Locale.ROOT).split(",");
+        for (int i = 0; i < this.members.length; i++) {
+            this.members[i] = this.members[i].strip();
+            Portfolio.weight(this.members[i]);
+        }
+    }
+
+    // Returns the heuristic weight of member, 0 for the uninformed strategies.
+    private static int weight(String member) {
+        switch (member) {
+            case "bfs":
+            case "dfs":
+            case "greedy":
+                return 0;
+            case "astar":
+                return 1;
+            case "wastar":
+                return 5;
+        }
+        if (member.startsWith("wastar")) {
+            try {
+                return Integer.parseUnsignedInt(member.substring("wastar".length()));
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+        }
+        throw new IllegalArgumentException("Unknown portfolio member " + member);
+    }
+
+    private static Frontier frontier(String member, State root) {
+        switch (member) {
+            case "bfs":
+                return new FrontierBFS();
+            case "dfs":
+                return new FrontierDFS();
+            case "greedy":
+                return SearchClient.bestFirst(SearchClient.heuristic(root, 0, 1));
+            default:
+                return SearchClient.bestFirst(SearchClient.heuristic(root, 1, Portfolio.weight(member)));
+        }
+    }
+
+    public Action[][] search(State initialState) {
+        ExecutorService executor = Executors.newFixedThreadPool(this.members.length, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorCompletionService<Action[][]> completion = new ExecutorCompletionService<>(executor);
+        ArrayList<Future<Action[][]>> futures = new ArrayList<>();
+        for (String member : this.members) {
+            // Each member gets its own root, so that no state is shared between the threads
+            State root = new State(initialState);
+            Frontier frontier = Portfolio.frontier(member, root);
+            futures.add(completion.submit(() -> {
+                SearchClient.statusLabel.set(member);
+                return SearchClient.search(root, frontier, 0);
+            }));
+        }
+
+        try {
+            long lastCancel = 0;
+            for (int remaining = this.members.length; remaining > 0; ) {
+                Future<Action[][]> future = completion.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    long now = System.currentTimeMillis();
+                    if (now - lastCancel >= CANCEL_INTERVAL_MILLIS && this.cancelOverBudget(futures)) {
+                        lastCancel = now;
+                    }
+                    continue;
+                }
+                remaining--;
+                String member = this.members[futures.indexOf(future)];
+                Action[][] plan;
+                try {
+                    plan = future.get();
+                } catch (CancellationException e) {
+                    continue;
+                } catch (ExecutionException e) {
+                    System.err.format("Portfolio: %s failed: %s\n", member, e.getCause());
+                    continue;
+                }
+                if (plan != null) {
+                    System.err.format("Portfolio: %s found a plan of length %,d first.\n", member, plan.length);
+                    return plan;
+                }
+                System.err.format("Portfolio: %s found no plan.\n", member);
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Cancels the last running member if the heap is over budget and more than one member is running. Returns
+    // whether a member was cancelled.
+    private boolean cancelOverBudget(ArrayList<Future<Action[][]>> futures) {
+        if (Memory.used() <= Portfolio.memoryBudget * Memory.max()) {
+            return false;
+        }
+        int running = 0;
+        for (Future<Action[][]> future : futures) {
+            if (!future.isDone()) {
+                running++;
+            }
+        }
+        for (int i = futures.size() - 1; i >= 0 && running > 1; i--) {
+            if (!futures.get(i).isDone()) {
+                System.err.format("Portfolio: cancelling %s to stay within the memory budget.\n", this.members[i]);
+                futures.get(i).cancel(true);
+                return true;
+            }
+        }
+        return false;
+    }
+}
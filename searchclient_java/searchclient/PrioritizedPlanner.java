@@ -0,0 +1,64 @@
+package searchclient;
+
+import java.util.ArrayList;
+
+// Prioritized planning. Agents are planned one after another, each with an AgentPlanner around the agents and boxes of
+// those planned before it, whose cells at every time step are kept in a shared ReservationTable. Successors that
+// would run into them are never generated, and a finished plan is reserved in turn, so the plans never have to be
+// checked against each other afterwards. When an agent cannot be planned around the others, it is moved to the front
+// and all agents are planned again, at most once per agent. This is fast but incomplete: an agent planned early never
+// makes way for one planned later.
+public class PrioritizedPlanner {
+    public Action[][] search(State initialState) {
+        Level level = State.level;
+        AgentPlanner planner = new AgentPlanner(initialState);
+        long startTime = System.nanoTime();
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int agent = 0; agent < level.numAgents; agent++) {
+            order.add(agent);
+        }
+
+        for (int attempt = 1; attempt <= level.numAgents; attempt++) {
+            ReservationTable reservations = new ReservationTable(level.rows * level.cols);
+            Action[][] plans = new Action[level.numAgents][];
+            int failed = -1;
+            for (int agent : order) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                plans[agent] = planner.plan(agent, reservations, true);
+                if (plans[agent] == null) {
+                    failed = agent;
+                    break;
+                }
+                planner.reserve(agent, plans[agent], reservations);
+            }
+            System.err.format("Prioritized planning: attempt %d, order %s, %s. Time: %3.3f s\n", attempt, order,
+                    failed < 0 ? "done" : "agent " + failed + " failed",
+                    (System.nanoTime() - startTime) / 1_000_000_000d);
+            if (failed < 0) {
+                return PrioritizedPlanner.combine(plans);
+            }
+            if (order.get(0) == failed) {
+                break; // Even planned first it cannot reach its goals
+            }
+            order.remove(Integer.valueOf(failed));
+            order.add(0, failed);
+        }
+        return null;
+    }
+
+    private static Action[][] combine(Action[][] plans) {
+        int length = 0;
+        for (Action[] plan : plans) {
+            length = Math.max(length, plan.length);
+        }
+        Action[][] combined = new Action[length][plans.length];
+        for (int t = 0; t < length; t++) {
+            for (int agent = 0; agent < plans.length; agent++) {
+                combined[t][agent] = t < plans[agent].length ? plans[agent][t] : Action.NoOp;
+            }
+        }
+        return combined;
+    }
+}
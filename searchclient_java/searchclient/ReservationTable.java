@@ -0,0 +1,92 @@
+package searchclient;
+
+import java.util.Arrays;
+
+// Cells taken at each time step, for planning an agent around the agents and boxes of others. Each (cell, time)
+// reservation is a key in an open-addressed long[] with linear probing. Reservations of a cell from some time on, such
+// as the cells agents rest on once their plans are done, are kept per cell instead, so they cost the same however
+// long the horizon. All lookups are O(1), and cells that are never reserved are answered without probing.
+public class ReservationTable {
+    private static final long EMPTY = -1;
+    private static final double MAX_LOAD = 0.5;
+
+    private final int[] permanentFrom; // Time from which each cell is reserved for good, Integer.MAX_VALUE if never
+    private final int[] lastTime; // Latest time each cell is reserved at by a single reservation, -1 if none
+    private long[] keys; // time << 32 | cell
+    private int size = 0;
+    private int shift;
+    private int horizon = -1;
+
+    public ReservationTable(int numCells) {
+        this.permanentFrom = new int[numCells];
+        Arrays.fill(this.permanentFrom, Integer.MAX_VALUE);
+        this.lastTime = new int[numCells];
+        Arrays.fill(this.lastTime, -1);
+        this.allocate(64);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> this.shift);
+    }
+
+    // Returns the slot holding key, or the empty slot where it would be inserted.
+    private int find(long key) {
+        int mask = this.keys.length - 1;
+        int i = this.slot(key);
+        while (this.keys[i] != EMPTY && this.keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    public void reserve(int cell, int time) {
+        long key = (long) time << 32 | cell;
+        int i = this.find(key);
+        if (this.keys[i] == key) {
+            return;
+        }
+        this.keys[i] = key;
+        this.lastTime[cell] = Math.max(this.lastTime[cell], time);
+        this.horizon = Math.max(this.horizon, time);
+        if (++this.size > this.keys.length * MAX_LOAD) {
+            long[] old = this.keys;
+            this.allocate(2 * old.length);
+            for (long k : old) {
+                if (k != EMPTY) {
+                    this.keys[this.find(k)] = k;
+                }
+            }
+        }
+    }
+
+    // Reserves cell at time and at every time after it.
+    public void reserveFrom(int cell, int time) {
+        this.permanentFrom[cell] = Math.min(this.permanentFrom[cell], time);
+        this.horizon = Math.max(this.horizon, time);
+    }
+
+    public boolean isFree(int cell, int time) {
+        if (time >= this.permanentFrom[cell]) {
+            return false;
+        } else if (time > this.lastTime[cell]) {
+            return true;
+        }
+        return this.keys[this.find((long) time << 32 | cell)] == EMPTY;
+    }
+
+    // Whether cell is free at time and at every time after it.
+    public boolean isFreeFrom(int cell, int time) {
+        return this.permanentFrom[cell] == Integer.MAX_VALUE && this.lastTime[cell] < time;
+    }
+
+    // The latest time at which a reservation starts, -1 if there is none. From then on the table no longer changes.
+    public int horizon() {
+        return this.horizon;
+    }
+}
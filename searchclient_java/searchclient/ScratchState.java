@@ -0,0 +1,147 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+// A state that is changed in place, for generating successors without allocating a State for every applicable
+// action. Besides the cells it keeps grids of the agent and the box letter on every cell, so that the applicability
+// checks read a single array element instead of scanning all agents and boxes. A parent is loaded into it, each
+// action is applied, the result is looked up by its hash and the action is undone again; only children that are kept
+// are copied into new States.
+class ScratchState extends State {
+    private static final Action[] ACTIONS = Action.values();
+    private static final ThreadLocal<ScratchState> scratch = new ThreadLocal<>();
+
+    // Number of states expanded and children generated by any search, counted from every search thread.
+    static final LongAdder expanded = new LongAdder();
+    static final LongAdder generated = new LongAdder();
+
+    private final Level forLevel;
+    private final byte[] agentGrid; // Agent index + 1 on each cell, 0 if there is none
+    private final char[] boxGrid; // Letter of the box on each cell, 0 if there is none
+    private final int[] letterStart = new int[26]; // Index of the first box of each letter
+
+    private ScratchState() {
+        super(new short[level.numAgents + level.numBoxes]);
+        this.forLevel = level;
+        this.agentGrid = new byte[level.rows * level.cols];
+        this.boxGrid = new char[level.rows * level.cols];
+        for (int b = level.numBoxes - 1; b >= 0; b--) {
+            this.letterStart[level.boxLetters[b] - 'A'] = b;
+        }
+    }
+
+    // Constructs a scratch state holding a copy of state.
+    ScratchState(State state) {
+        this();
+        this.load(state);
+    }
+
+    // The scratch state of the calling thread, with unspecified contents.
+    static ScratchState forThread() {
+        ScratchState state = scratch.get();
+        if (state == null || state.forLevel != level) {
+            state = new ScratchState();
+            scratch.set(state);
+        }
+        return state;
+    }
+
+    // Decides, while a child is still held in the scratch state, whether it is kept.
+    interface Filter {
+        boolean admits(State parent, Action action, State child);
+    }
+
+    ArrayList<State> expand(State parent, int agentIndex, StateSet known) {
+        return this.expand(parent, agentIndex, known, null);
+    }
+
+    // Generates the children of parent for agentIndex: applies each action in place, drops box moves that deadlock
+    // the box and, when known is given, children already in known (with no larger g, if it keeps costs), and when
+    // filter is given, those it does not admit, and only allocates a State for the rest. known is only read, so
+    // threads may share it as long as nothing is added to it meanwhile.
+    ArrayList<State> expand(State parent, int agentIndex, StateSet known, Filter filter) {
+        this.load(parent);
+        ArrayList<State> children = new ArrayList<>(16);
+        // Only the actions the walls allow, in ordinal order
+        for (int actions = level.feasibleActions[this.cells[agentIndex]]; actions != 0; actions &= actions - 1) {
+            Action action = ACTIONS[Integer.numberOfTrailingZeros(actions)];
+            if (!this.isUnblocked(agentIndex, action)) {
+                continue;
+            }
+            boolean movesBox = action.type == ActionType.Push || action.type == ActionType.Pull;
+            int boxCell = movesBox ? this.movedBoxCell(agentIndex, action) : -1;
+            this.applyAction(agentIndex, action);
+            if (!(movesBox && level.deadlocks != null && level.deadlocks.isDeadlocked(this, boxCell))
+                    && (known == null || !known.containsWithin(this, parent.g + 1))
+                    && (filter == null || filter.admits(parent, action, this))) {
+                children.add(new State(parent, action, agentIndex, this));
+            }
+            this.undo(agentIndex, action);
+        }
+        ScratchState.expanded.increment();
+        ScratchState.generated.add(children.size());
+        return children;
+    }
+
+    @Override
+    void load(State other) {
+        for (int i = 0; i < level.numAgents; i++) {
+            this.agentGrid[this.cells[i]] = 0;
+        }
+        for (int b = 0; b < level.numBoxes; b++) {
+            this.boxGrid[this.boxCell(b)] = 0;
+        }
+        super.load(other);
+        for (int i = 0; i < level.numAgents; i++) {
+            this.agentGrid[this.cells[i]] = (byte) (i + 1);
+        }
+        for (int b = 0; b < level.numBoxes; b++) {
+            this.boxGrid[this.boxCell(b)] = level.boxLetters[b];
+        }
+    }
+
+    @Override
+    void moveAgent(int agent, int to) {
+        this.agentGrid[this.cells[agent]] = 0;
+        this.agentGrid[to] = (byte) (agent + 1);
+        super.moveAgent(agent, to);
+    }
+
+    @Override
+    void moveBox(int from, int to) {
+        super.moveBox(from, to); // Finds the box through the grid, so update it afterwards
+        this.boxGrid[to] = this.boxGrid[from];
+        this.boxGrid[from] = 0;
+    }
+
+    @Override
+    public int boxIndexAt(int cell) {
+        char letter = this.boxGrid[cell];
+        if (letter == 0) {
+            return -1;
+        }
+        int start = this.letterStart[letter - 'A'];
+        for (int b = start; b < level.boxGroupEnd[start]; b++) {
+            if (this.cells[level.numAgents + b] == cell) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    char boxLetterAt(int cell) {
+        return this.boxGrid[cell];
+    }
+
+    @Override
+    public boolean hasBoxAt(char letter, int cell) {
+        return this.boxGrid[cell] == letter;
+    }
+
+    @Override
+    boolean isUnoccupied(int cell) {
+        return this.boxGrid[cell] == 0 && this.agentGrid[cell] == 0;
+    }
+}
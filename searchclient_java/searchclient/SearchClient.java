@@ -1,110 +1,149 @@
 package searchclient;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 public class SearchClient {
-    public static State parseLevel(BufferedReader serverMessages)
+    // Whether duplicate detection confirms equal fingerprints by comparing the states themselves.
+    static boolean verifyStates = false;
+    // Off-heap store for expanded states, or null to keep them on the heap linked through State.parent.
+    static StateStore stateStore = null;
+    // Frontier used by the best-first strategies: "bucket" or "lifo" for FrontierBucket, "pq" for FrontierBestFirst.
+    static String bestFirstFrontier = "bucket";
+    // Whether the best-first strategies use HeuristicBoxes, and whether it matches boxes to goals optimally.
+    static boolean boxHeuristic = false;
+    static boolean exactBoxMatching = false;
+    // Number of worker threads for hash-distributed A* (-hdastar), or 0 to search on the main thread.
+    static int searchThreads = 0;
+    // Whether each agent is planned with IDA*, and the number of bits of its transposition table size.
+    static boolean iterativeDeepening = false;
+    static int transpositionTableBits = 22;
+    // Number of states popped and expanded together by the single-threaded search, for frontiers that allow it.
+    static int expansionBatch = 1;
+    // Weights of g and h in the best-first strategy chosen, or null if another strategy was chosen.
+    static int[] bestFirstWeights = null;
+    // Whether the sequential search plans each agent goal by goal, and the expansions allowed for each goal before it
+    // falls back to planning all of the agent's goals at once.
+    static boolean subgoals = false;
+    static long subgoalExpansions = 200_000;
+    // Seconds after the client started by which -anytime stops improving its plan.
+    static double deadline = 60;
+    // Name printed with the status lines of the calling thread, for searches running side by side.
+    static final ThreadLocal<String> statusLabel = new ThreadLocal<>();
+
+    public static void main(String[] args)
             throws IOException {
-        // We can assume that the level file is conforming to specification, since the
-        // server verifies this.
-        // Read domain
-        serverMessages.readLine(); // #domain
-        serverMessages.readLine(); // hospital
-
-        // Read Level name
-        serverMessages.readLine(); // #levelname
-        serverMessages.readLine(); // <name>
-
-        // Read colors
-        serverMessages.readLine(); // #colors
-        Color[] agentColors = new Color[10];
-        Color[] boxColors = new Color[26];
-        String line = serverMessages.readLine();
-        while (!line.startsWith("#")) {
-            String[] split = line.split(":");
-            Color color = Color.fromString(split[0].strip());
-            String[] entities = split[1].split(",");
-            for (String entity : entities) {
-                char c = entity.strip().charAt(0);
-                if ('0' <= c && c <= '9') {
-                    agentColors[c - '0'] = color;
-                } else if ('A' <= c && c <= 'Z') {
-                    boxColors[c - 'A'] = color;
-                }
-            }
-            line = serverMessages.readLine();
-        }
-        // Read initial state
-        // line is currently "#initial"
-        int numRows = 0;
-        int numCols = 0;
-        ArrayList<String> levelLines = new ArrayList<>(64);
-        line = serverMessages.readLine();
-        while (!line.startsWith("#")) {
-            levelLines.add(line);
-            numCols = Math.max(numCols, line.length());
-            ++numRows;
-            line = serverMessages.readLine();
-        }
-        int numAgents = 0;
-        int[] agentRows = new int[10];
-        int[] agentCols = new int[10];
-        boolean[][] walls = new boolean[numRows][numCols];
-        char[][] boxes = new char[numRows][numCols];
-        for (int row = 0; row < numRows; ++row) {
-            line = levelLines.get(row);
-            for (int col = 0; col < line.length(); ++col) {
-                char c = line.charAt(col);
-
-                if ('0' <= c && c <= '9') {
-                    agentRows[c - '0'] = row;
-                    agentCols[c - '0'] = col;
-                    ++numAgents;
-                } else if ('A' <= c && c <= 'Z') {
-                    boxes[row][col] = c;
-                } else if (c == '+') {
-                    walls[row][col] = true;
-                }
-            }
+        // Send client name to server.
+        System.out.println("SearchClient");
+        // Parse the level. The parser stops after #end, so the rest of the stream is left for the server's replies.
+        long parseStart = System.nanoTime();
+        BufferedInputStream serverStream = new BufferedInputStream(System.in);
+        State initialState = LevelParser.parse(serverStream);
+        BufferedReader serverMessages = new BufferedReader(new InputStreamReader(serverStream,
+                StandardCharsets.US_ASCII));
+        System.err.format("Level parsing: %.3f s\n", (System.nanoTime() - parseStart) / 1_000_000_000d);
+        Action[][] plan;
+        try {
+            plan = SearchClient.solve(initialState, args);
+        } catch (OutOfMemoryError ex) {
+            System.err.println("Maximum memory usage exceeded.");
+            plan = null;
         }
-        agentRows = Arrays.copyOf(agentRows, numAgents);
-        agentCols = Arrays.copyOf(agentCols, numAgents);
-
-        // Read goal state
-        // line is currently "#goal"
-        char[][] goals = new char[numRows][numCols];
-        line = serverMessages.readLine();
-        int row = 0;
-        while (!line.startsWith("#")) {
-            for (int col = 0; col < line.length(); ++col) {
-                char c = line.charAt(col);
-
-                if (('0' <= c && c <= '9') || ('A' <= c && c <= 'Z')) {
-                    goals[row][col] = c;
+
+        // Print plan to server.
+        if (plan == null) {
+            System.err.println("Unable to solve level.");
+            System.exit(0);
+        } else {
+            System.err.format("Found solution of length %,d.\n", plan.length);
+
+            for (Action[] jointAction : plan) {
+                System.out.print(jointAction[0].name + "@" + jointAction[0].name);
+                for (int action = 1; action < jointAction.length; ++action) {
+                    System.out.print("|");
+                    System.out.print(jointAction[action].name);
                 }
+                System.out.println();
+                // We must read the server's response to not fill up the stdin buffer and block
+                // the server.
+                serverMessages.readLine();
             }
-            ++row;
-            line = serverMessages.readLine();
         }
-        return new State(agentRows, agentCols, agentColors, walls, boxes, boxColors, goals);
     }
 
-    public static void main(String[] args)
+    // Sets the options and strategy given by args, as on the command line, analyses the level of initialState and
+    // searches it for a plan, which is returned as joint actions, or null if none was found.
+    static Action[][] solve(State initialState, String[] args)
             throws IOException {
-        // Send client name to server.
-        System.out.println("SearchClient");
-        // Parse the level.
-        BufferedReader serverMessages = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
-        State initialState = SearchClient.parseLevel(serverMessages);
+        for (String arg : args) {
+            if (arg.equalsIgnoreCase("-verify")) {
+                SearchClient.verifyStates = true;
+            } else if (arg.equalsIgnoreCase("-offheap")) {
+                SearchClient.stateStore = new StateStore();
+            } else if (arg.equalsIgnoreCase("-lazydistances")) {
+                DistanceMap.eager = false;
+            } else if (arg.equalsIgnoreCase("-hpa")) {
+                DistanceMap.hierarchical = true;
+            } else if (arg.equalsIgnoreCase("-nodeadcells")) {
+                Deadlocks.deadCells = false;
+            } else if (arg.equalsIgnoreCase("-nofreeze")) {
+                Deadlocks.freeze = false;
+            } else if (arg.equalsIgnoreCase("-incremental")) {
+                Heuristic.incremental = true;
+            } else if (arg.equalsIgnoreCase("-boxes")) {
+                SearchClient.boxHeuristic = true;
+            } else if (arg.equalsIgnoreCase("-hungarian")) {
+                SearchClient.boxHeuristic = true;
+                SearchClient.exactBoxMatching = true;
+            } else if (arg.equalsIgnoreCase("-subgoals")) {
+                SearchClient.subgoals = true;
+            } else if (arg.toLowerCase(Locale.ROOT).startsWith("-subgoals=")) {
+                SearchClient.subgoals = true;
+                SearchClient.subgoalExpansions = Long.parseLong(arg.substring("-subgoals=".length()));
+            } else if (arg.equalsIgnoreCase("-lifo")) {
+                SearchClient.bestFirstFrontier = "lifo";
+            } else if (arg.equalsIgnoreCase("-pq")) {
+                SearchClient.bestFirstFrontier = "pq";
+            } else if (arg.equalsIgnoreCase("-batch")) {
+                SearchClient.expansionBatch = 64;
+            } else if (arg.toLowerCase(Locale.ROOT).startsWith("-batch=")) {
+                SearchClient.expansionBatch = Math.max(Integer.parseInt(arg.substring("-batch=".length())), 1);
+            } else if (arg.toLowerCase(Locale.ROOT).startsWith("-tt=")) {
+                SearchClient.transpositionTableBits = Integer.parseInt(arg.substring("-tt=".length()));
+            } else if (arg.toLowerCase(Locale.ROOT).startsWith("-deadline=")) {
+                SearchClient.deadline = Double.parseDouble(arg.substring("-deadline=".length()));
+            } else if (arg.toLowerCase(Locale.ROOT).startsWith("-membudget=")) {
+                Portfolio.memoryBudget = Double.parseDouble(arg.substring("-membudget=".length()));
+            } else if (arg.toLowerCase(Locale.ROOT).startsWith("-offheap=")) {
+                SearchClient.stateStore = new StateStore(new File(arg.substring("-offheap=".length())));
+            }
+        }
+
+        long analysisStart = System.nanoTime();
+        State.level.analyze();
+        System.err.format("Level analysis: %.3f s\n", (System.nanoTime() - analysisStart) / 1_000_000_000d);
+        if (DistanceMap.hierarchical) {
+            System.err.println(State.level.getGraph());
+        }
+
         // Select search strategy.
         Frontier frontier;
+        Portfolio portfolio = null;
+        AnytimeSearch anytime = null;
+        BidirectionalSearch bidirectional = null;
+        ConflictBasedSearch conflictBased = null;
+        PrioritizedPlanner prioritized = null;
+        OperatorDecomposition operatorDecomposition = null;
         if (args.length > 0) {
             switch (args[0].toLowerCase(Locale.ROOT)) {
                 case "-bfs":
@@ -114,191 +153,501 @@ public class SearchClient {
                     frontier = new FrontierDFS();
                     break;
                 case "-astar":
-                    frontier = new FrontierBestFirst(new HeuristicAStar(initialState));
+                    SearchClient.bestFirstWeights = new int[] { 1, 1 };
+                    frontier = SearchClient.bestFirst(SearchClient.heuristic(initialState, 1, 1));
                     break;
                 case "-wastar":
                     int w = 5;
-                    if (args.length > 1) {
+                    if (args.length > 1 && !args[1].startsWith("-")) {
                         try {
                             w = Integer.parseUnsignedInt(args[1]);
                         } catch (NumberFormatException e) {
                             System.err.println("Couldn't parse weight argument to -wastar as integer, using default.");
                         }
                     }
-                    frontier = new FrontierBestFirst(new HeuristicWeightedAStar(initialState, w));
+                    SearchClient.bestFirstWeights = new int[] { 1, w };
+                    frontier = SearchClient.bestFirst(SearchClient.heuristic(initialState, 1, w));
                     break;
                 case "-greedy":
-                    frontier = new FrontierBestFirst(new HeuristicGreedy(initialState));
+                    SearchClient.bestFirstWeights = new int[] { 0, 1 };
+                    frontier = SearchClient.bestFirst(SearchClient.heuristic(initialState, 0, 1));
+                    break;
+                case "-hdastar":
+                    int threads = Runtime.getRuntime().availableProcessors();
+                    if (args.length > 1 && !args[1].startsWith("-")) {
+                        try {
+                            threads = Integer.parseUnsignedInt(args[1]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Couldn't parse thread argument to -hdastar as integer, using default.");
+                        }
+                    }
+                    SearchClient.searchThreads = Math.max(threads, 1);
+                    frontier = null; // Each worker thread builds its own
+                    break;
+                case "-idastar":
+                    SearchClient.iterativeDeepening = true;
+                    if (SearchClient.stateStore != null) {
+                        System.err.println("Off-heap state storage is not available with IDA*.");
+                        SearchClient.stateStore = null;
+                    }
+                    frontier = null; // IDA* keeps no frontier
+                    break;
+                case "-bidir":
+                    if (BidirectionalSearch.supports(State.level)) {
+                        bidirectional = new BidirectionalSearch();
+                        frontier = null;
+                    } else {
+                        System.err.println("Falling back to breadth-first search.");
+                        frontier = new FrontierBFS();
+                    }
+                    break;
+                case "-cbs":
+                    int cbsBatch = 1;
+                    if (args.length > 1 && !args[1].startsWith("-")) {
+                        try {
+                            cbsBatch = Integer.parseUnsignedInt(args[1]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Couldn't parse batch argument to -cbs as integer, using default.");
+                        }
+                    }
+                    if (AgentPlanner.supports(State.level)) {
+                        conflictBased = new ConflictBasedSearch(cbsBatch);
+                        frontier = null;
+                    } else {
+                        System.err.println("Falling back to A* search.");
+                        frontier = SearchClient.bestFirst(SearchClient.heuristic(initialState, 1, 1));
+                    }
+                    break;
+                case "-prioritized":
+                    if (AgentPlanner.supports(State.level)) {
+                        prioritized = new PrioritizedPlanner();
+                        frontier = null;
+                    } else {
+                        System.err.println("Falling back to A* search.");
+                        frontier = SearchClient.bestFirst(SearchClient.heuristic(initialState, 1, 1));
+                    }
+                    break;
+                case "-od":
+                    if (OperatorDecomposition.supports(State.level)) {
+                        operatorDecomposition = new OperatorDecomposition();
+                        frontier = null;
+                    } else {
+                        System.err.println("Falling back to A* search.");
+                        frontier = SearchClient.bestFirst(SearchClient.heuristic(initialState, 1, 1));
+                    }
+                    break;
+                case "-anytime":
+                    int initialWeight = 5;
+                    if (args.length > 1 && !args[1].startsWith("-")) {
+                        try {
+                            initialWeight = Integer.parseUnsignedInt(args[1]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Couldn't parse weight argument to -anytime as integer, using default.");
+                        }
+                    }
+                    anytime = new AnytimeSearch(initialWeight, SearchClient.deadline);
+                    frontier = null; // Each restart builds its own
+                    break;
+                case "-portfolio":
+                    String members = Portfolio.DEFAULT_MEMBERS;
+                    if (args.length > 1 && !args[1].startsWith("-")) {
+                        members = args[1];
+                    }
+                    try {
+                        portfolio = new Portfolio(members);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage() + ", using the default portfolio.");
+                        portfolio = new Portfolio(Portfolio.DEFAULT_MEMBERS);
+                    }
+                    if (SearchClient.stateStore != null) {
+                        System.err.println("Off-heap state storage is not available in portfolio mode.");
+                        SearchClient.stateStore = null;
+                    }
+                    frontier = null; // Each member builds its own
                     break;
                 default:
-                    frontier = new FrontierBestFirst(new HeuristicAStar(initialState));
-                    System.err.println("Defaulting to Astar search. Use arguments -bfs, -dfs, -astar, -wastar, or " +
-                            "-greedy to set the search strategy.");
+                    SearchClient.bestFirstWeights = new int[] { 1, 1 };
+                    frontier = SearchClient.bestFirst(SearchClient.heuristic(initialState, 1, 1));
+                    System.err.println("Defaulting to Astar search. Use arguments -bfs, -dfs, -astar, -wastar, " +
+                            "-greedy, -hdastar, -idastar, -anytime, -bidir, -cbs, -prioritized, -od, or -portfolio " +
+                            "to set the search strategy.");
             }
         } else {
-            frontier = new FrontierBestFirst(new HeuristicAStar(initialState));
+            SearchClient.bestFirstWeights = new int[] { 1, 1 };
+            frontier = SearchClient.bestFirst(SearchClient.heuristic(initialState, 1, 1));
+        }
+        if (SearchClient.subgoals && (frontier == null || SearchClient.bestFirstWeights == null
+                || SearchClient.stateStore != null || SearchClient.searchThreads > 0
+                || SearchClient.iterativeDeepening)) {
+            System.err.println("Goal-by-goal planning is only available with -astar, -wastar and -greedy, without " +
+                    "-offheap, so -subgoals is ignored.");
+            SearchClient.subgoals = false;
         }
 
-        // Search for a plan.
-        Action[][] plan;
-        try {
-            plan = SearchClient.search(initialState, frontier, 0);
-        } catch (OutOfMemoryError ex) {
-            System.err.println("Maximum memory usage exceeded.");
-            plan = null;
+        // Search for a plan. The startup time is reported when the client exits, whichever way it does.
+        long searchStart = System.nanoTime();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> SearchClient.printStartup(searchStart)));
+        if (portfolio != null) {
+            return portfolio.search(initialState);
+        } else if (anytime != null) {
+            return anytime.search(initialState);
+        } else if (bidirectional != null) {
+            return bidirectional.search(initialState);
+        } else if (conflictBased != null) {
+            return conflictBased.search(initialState);
+        } else if (prioritized != null) {
+            return prioritized.search(initialState);
+        } else if (operatorDecomposition != null) {
+            return operatorDecomposition.search(initialState);
         }
+        return SearchClient.search(initialState, frontier, 0);
+    }
 
-        // Print plan to server.
-        if (plan == null) {
-            System.err.println("Unable to solve level.");
-            System.exit(0);
-        } else {
-            System.err.format("Found solution of length %,d.\n", plan.length);
+    // Prints the time from JVM start until the search started at searchStart, which is everything that precedes the
+    // first expansion. The JVM's uptime is only asked for once the search is over, as loading the management classes
+    // takes longer than parsing most levels.
+    private static void printStartup(long searchStart) {
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.err.format("Startup: %.3f s from JVM start to search\n",
+                (uptime - (System.nanoTime() - searchStart) / 1_000_000) / 1000d);
+    }
 
-            for (Action[] jointAction : plan) {
-                System.out.print(jointAction[0].name + "@" + jointAction[0].name);
-                for (int action = 1; action < jointAction.length; ++action) {
-                    System.out.print("|");
-                    System.out.print(jointAction[action].name);
-                }
-                System.out.println();
-                // We must read the server's response to not fill up the stdin buffer and block
-                // the server.
-                serverMessages.readLine();
-            }
+    // Heuristic for f = gWeight * g + hWeight * h, box-aware if requested on the command line.
+    static Heuristic heuristic(State initialState, int gWeight, int hWeight) {
+        if (SearchClient.boxHeuristic) {
+            return new HeuristicBoxes(initialState, gWeight, hWeight, SearchClient.exactBoxMatching);
+        } else if (gWeight == 0) {
+            return new HeuristicGreedy(initialState);
+        } else if (hWeight == 1) {
+            return new HeuristicAStar(initialState);
+        }
+        return new HeuristicWeightedAStar(initialState, hWeight);
+    }
+
+    static Frontier bestFirst(Heuristic heuristic) {
+        switch (SearchClient.bestFirstFrontier) {
+            case "pq":
+                return new FrontierBestFirst(heuristic);
+            case "lifo":
+                return new FrontierBucket(heuristic, true);
+            default:
+                return new FrontierBucket(heuristic);
         }
     }
 
     public static Action[][] search(State initialState, Frontier frontier, int agentIndex) {
-        // System.err.format("Starting %s.\n", frontier.getName());
-        int iterations = 0;
-        frontier.add(initialState);
-        HashSet<State> expanded = new HashSet<>();
-        Action[][] previousPlans = new Action[initialState.agentRows.length][];
-        State resetState = initialState;
+        return SearchClient.search(initialState, frontier, agentIndex, Integer.MAX_VALUE);
+    }
 
-        while (true) {
-            State state = frontier.pop();
-            expanded.add(state);
+    // As above, but for single-agent levels only plans shorter than bound are searched for.
+    public static Action[][] search(State initialState, Frontier frontier, int agentIndex, int bound) {
+        // System.err.format("Starting %s.\n", frontier.getName());
+        if (State.level.numAgents > 1) {
+            bound = Integer.MAX_VALUE; // Plans are combined from several searches, so no single g is bounded
+        }
+        SearchCounters.start();
+        Action[][] previousPlans = new Action[State.level.numAgents][];
+        State root = initialState;
 
-            // Print a status message every 10000 iteration
-            if (++iterations % 10000 == 0) {
-                printSearchStatus(expanded, frontier);
+        while (agentIndex < State.level.numAgents) {
+            State state;
+            if (SearchClient.searchThreads > 0) {
+                State agentRoot = root;
+                HashDistributedSearch search = new HashDistributedSearch(SearchClient.searchThreads,
+                        () -> SearchClient.heuristic(agentRoot, 1, 1));
+                state = search.search(root, agentIndex, SearchClient::printSearchStatus);
+            } else if (SearchClient.iterativeDeepening) {
+                IterativeDeepeningSearch search = new IterativeDeepeningSearch(SearchClient.heuristic(root, 1, 1),
+                        SearchClient.transpositionTableBits);
+                state = search.search(root, agentIndex);
+            } else if (SearchClient.subgoals) {
+                state = new SubgoalPlanner(agentIndex).search(root);
+            } else {
+                state = SearchClient.searchAgent(root, frontier, agentIndex, previousPlans, bound);
             }
-            
-            if (agentIndex == initialState.agentRows.length) {
-                System.err.println("All individual plans found.");
-                for (int i = 0; i < previousPlans.length; i++) {
-                    System.err.print("Plan " + i + " : " + Arrays.toString(previousPlans[i]));
-                    System.err.println();
-                }
-                // Find the length of the longest plan
-                int maxPlanLength = 0;
-                for (Action[] plan : previousPlans) {
-                    if (plan != null && plan.length > maxPlanLength) {
-                        maxPlanLength = plan.length;
-                    }
-                }
-                Action[][] combinedPlan = new Action[maxPlanLength][state.agentRows.length];
-                for (int i = 0; i < maxPlanLength; i++) {
-                    for (int j = 0; j < state.agentRows.length; j++) {
-                        if (previousPlans[j] != null && i < previousPlans[j].length
-                                && previousPlans[j][i] != null) {
+            if (state == null) {
+                return null;
+            }
+            System.err.println("Goal state reached for agent " + agentIndex);
+            // Fill previousPlans with the plan for the current agent
+            if (stateStore != null && SearchClient.searchThreads == 0 && !SearchClient.iterativeDeepening) {
+                previousPlans[agentIndex] = stateStore.extractPlan(state);
+            } else {
+                previousPlans[agentIndex] = state.extractPlanForCurrentAgent();
+            }
+
+            System.err.println("Plan for agent " + agentIndex + " : " + Arrays.toString(previousPlans[agentIndex]));
+
+            if (State.level.numAgents == 1) {
+                Action[][] combinedPlan = new Action[state.g][State.level.numAgents];
+                for (int i = 0; i < state.g; i++) {
+                    for (int j = 0; j < State.level.numAgents; j++) {
+                        if (previousPlans[j] != null && i < previousPlans[j].length) {
                             combinedPlan[i][j] = previousPlans[j][i];
                         } else {
                             combinedPlan[i][j] = Action.NoOp;
                         }
-                    }
-                }
 
-                System.err.println("Combined plans: ");
-                for (Action[] actions : combinedPlan) {
-                    for (Action action : actions) {
-                        System.err.print(action + " ");
                     }
-                    System.err.println();
                 }
                 return combinedPlan; // Return the combined plan
             }
-            // Check if goal state for the current agent
-            if (state.isGoalStateForAgent(agentIndex)) { // Check for individual goal state
-                System.err.println("Goal state reached for agent " + agentIndex);
-                printSearchStatus(expanded, frontier);
-                // Fill previousPlans with the plan for the current agent
-                previousPlans[agentIndex] = state.extractPlanForCurrentAgent(); // Extract plan after reaching goal
-
-                // Resolve conflicts
-                ArrayList<Action> conflictedPlan = new ArrayList<>(Arrays.asList(previousPlans[agentIndex]));
-                if (initialState.agentRows.length > 1 && previousPlans[0] != null) {
-
-                    for (int i = 0; i < conflictedPlan.size(); i++) {
-                        Action conflictedAction = state.resolveConflicts(previousPlans, conflictedPlan.get(i));
-                        if (conflictedAction.equals(conflictedPlan.get(i))) {
-                            continue;
-                        } else {
-                            conflictedPlan.add(i, conflictedAction);
-                        }
-                    }
 
-                    previousPlans[agentIndex] = conflictedPlan.toArray(new Action[conflictedPlan.size()]);
+            // The next agent is planned from the state this one leaves behind, after all the agents before it
+            State resetState = new State(root);
+            for (int i = 0; i < previousPlans[agentIndex].length; i++) {
+                resetState = new State(resetState, previousPlans[agentIndex][i], agentIndex);
+            }
+            resetState = new State(resetState);
+            resetState.currentAgentIndex = agentIndex + 1;
+            previousPlans[agentIndex] = SearchClient.schedule(initialState, previousPlans, agentIndex, resetState);
+            System.err.println("Scheduled plan for agent " + agentIndex + " : "
+                    + Arrays.toString(previousPlans[agentIndex]));
+            root = resetState;
+            agentIndex++; // Increment agent index
+            if (agentIndex < State.level.numAgents && frontier != null) {
+                frontier = frontier.emptyCopy(); // The same strategy, with the same weights, for the next agent
+            }
+        }
+
+        System.err.println("All individual plans found.");
+        for (int i = 0; i < previousPlans.length; i++) {
+            System.err.print("Plan " + i + " : " + Arrays.toString(previousPlans[i]));
+            System.err.println();
+        }
+        // Find the length of the longest plan
+        int maxPlanLength = 0;
+        for (Action[] plan : previousPlans) {
+            if (plan != null && plan.length > maxPlanLength) {
+                maxPlanLength = plan.length;
+            }
+        }
+        Action[][] combinedPlan = new Action[maxPlanLength][State.level.numAgents];
+        for (int i = 0; i < maxPlanLength; i++) {
+            for (int j = 0; j < State.level.numAgents; j++) {
+                if (previousPlans[j] != null && i < previousPlans[j].length
+                        && previousPlans[j][i] != null) {
+                    combinedPlan[i][j] = previousPlans[j][i];
+                } else {
+                    combinedPlan[i][j] = Action.NoOp;
+                }
+            }
+        }
+
+        System.err.println("Combined plans: ");
+        for (Action[] actions : combinedPlan) {
+            for (Action action : actions) {
+                System.err.print(action + " ");
+            }
+            System.err.println();
+        }
+        return combinedPlan; // Return the combined plan
+    }
+
+    // Returns the plan of agent, which was planned from the state the agents before it leave behind, as it is to run
+    // from initialState alongside their scheduled plans. The agent sets out at once and waits whenever its next
+    // action is not applicable yet or would collide with one of theirs, as long as every action of every agent stays
+    // applicable and the agents end up in last, the state the plan leads to after theirs. Otherwise its plan starts
+    // once theirs have all finished, which is always valid, since it was planned from that state.
+    private static Action[] schedule(State initialState, Action[][] previousPlans, int agent, State last) {
+        Action[] plan = previousPlans[agent];
+        int end = 0;
+        for (int i = 0; i < agent; i++) {
+            if (previousPlans[i] != null) {
+                end = Math.max(end, previousPlans[i].length);
+            }
+        }
+        ArrayList<Action> scheduled = new ArrayList<>(plan.length);
+        Action[] jointAction = new Action[agent + 1];
+        State state = new State(initialState);
+        int next = 0;
+        for (int time = 0; time < end || next < plan.length; time++) {
+            for (int i = 0; i < agent; i++) {
+                jointAction[i] = previousPlans[i] != null && time < previousPlans[i].length ? previousPlans[i][time]
+                        : Action.NoOp;
+            }
+            boolean clear = next < plan.length && state.isApplicable(agent, plan[next]);
+            for (int i = 0; i < agent && clear; i++) {
+                clear = !state.collides(agent, plan[next], i, jointAction[i]);
+            }
+            if (!clear && time >= end && next < plan.length) {
+                break; // The others have finished, so waiting cannot help
+            }
+            jointAction[agent] = clear ? plan[next++] : Action.NoOp;
+            boolean applicable = true;
+            for (int i = 0; i < agent && applicable; i++) {
+                applicable = state.isApplicable(i, jointAction[i]);
+            }
+            if (!applicable) {
+                break; // The agent is in the way of one of the others
+            }
+            scheduled.add(jointAction[agent]);
+            for (int i = 0; i <= agent; i++) {
+                state = new State(state, jointAction[i], i);
+            }
+            state = new State(state); // Drop the per-agent states
+        }
+        if (next == plan.length && state.equals(last)) {
+            return scheduled.toArray(new Action[scheduled.size()]);
+        }
+        Action[] delayed = new Action[end + plan.length];
+        Arrays.fill(delayed, 0, end, Action.NoOp);
+        System.arraycopy(plan, 0, delayed, end, plan.length);
+        return delayed;
+    }
+
+    private static State searchAgent(State root, Frontier frontier, int agentIndex, Action[][] previousPlans,
+            int bound) {
+        return SearchClient.searchAgent(root, frontier, agentIndex, state -> state.isGoalStateForAgent(agentIndex),
+                null, bound, Long.MAX_VALUE);
+    }
+
+    // Searches from root on a single thread for agentIndex until it reaches a state satisfying isGoal, and returns that
+    // state, or null if the frontier runs out or maxExpansions states are expanded first. Children that filter, if
+    // given, does not admit are never generated, and states with g + h at or above bound are dropped.
+    static State searchAgent(State root, Frontier frontier, int agentIndex, Predicate<State> isGoal,
+            ScratchState.Filter filter, int bound, long maxExpansions) {
+        frontier.add(root);
+        // Every generated state, whether still in the frontier or already expanded. When the search has to find
+        // shortest plans, the set keeps the lowest g of each state, and a state reached again with a lower g is added
+        // again, as generating it first does not mean it was reached by a shortest path.
+        boolean reopen = frontier.findsShortestPlans();
+        StateSet seen = new StateSet(65536, SearchClient.verifyStates, reopen);
+        seen.add(root);
+        if (stateStore != null) {
+            stateStore.clear();
+        }
+        int expanded = 0;
+        SearchCounters.current().reset();
+
+        int maxBatchSize = frontier.supportsBatches() ? SearchClient.expansionBatch : 1;
+        // Batches shrink to what could be merged after states had to be put back, and double while nothing is
+        // put back, so that little speculative work is thrown away when children keep jumping the queue
+        int batchSize = 1;
+        State[] batch = new State[maxBatchSize];
+        ArrayList<ArrayList<State>> children = new ArrayList<>();
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null; // Cancelled, e.g. by a portfolio member finding a plan first
+            }
+            int popped = 0;
+            while (popped < batchSize && !frontier.isEmpty()) {
+                State state = frontier.pop();
+                if (reopen && state.g > seen.cost(state)) {
+                    continue; // Reached again with a lower g after it was added
                 }
+                batch[popped++] = state;
+            }
+            if (popped == 0 || expanded >= maxExpansions) {
+                printSearchStatus(expanded, frontier.size() + popped);
+                return null;
+            }
+            SearchClient.expand(batch, popped, frontier, agentIndex, seen, filter, children);
+            int fullBatch = popped;
 
-                System.err.println("Plan for agent " + agentIndex + " : " + Arrays.toString(previousPlans[agentIndex]));
+            // Merge the children in the order the states were popped, so the search runs exactly as if they had been
+            // expanded one at a time
+            for (int i = 0; i < popped; i++) {
+                State state = batch[i];
+                expanded++;
+                int stateIndex = -1;
+                if (stateStore != null) {
+                    stateIndex = stateStore.append(state, state.parentIndex);
+                }
 
-                if (initialState.agentRows.length == 1) {
-                    Action[][] combinedPlan = new Action[state.g][state.agentRows.length];
-                    for (int i = 0; i < state.g; i++) {
-                        for (int j = 0; j < state.agentRows.length; j++) {
-                            if (previousPlans[j] != null && i < previousPlans[j].length) {
-                                combinedPlan[i][j] = previousPlans[j][i];
-                            } else {
-                                combinedPlan[i][j] = Action.NoOp;
-                            }
+                // States popped for this batch but not merged yet still count as part of the frontier
+                int frontierSize = frontier.size() + popped - i - 1;
 
-                        }
-                    }
-                    return combinedPlan; // Return the combined plan
+                // Print a status message every 10000 iteration
+                if (expanded % 10000 == 0) {
+                    printSearchStatus(expanded, frontierSize);
+                }
 
-                } else {
-                    if (agentIndex < initialState.agentRows.length) {
-                        // Deep copy the initial state for the next agent
-                        resetState = new State(initialState.agentRows.clone(), initialState.agentCols.clone(),
-                                initialState.agentColors, initialState.walls,
-                                initialState.boxes, initialState.boxColors, initialState.goals);
-                        for (int i = 0; i < previousPlans[agentIndex].length; i++) {
-                            resetState = new State(resetState, previousPlans[agentIndex][i], agentIndex);
-                        }
-                        resetState.g = 0;
-                        resetState.currentAgentIndex = agentIndex + 1;
-                        resetState.parent = null;
-                        frontier = new FrontierBestFirst(new HeuristicAStar(resetState));
-                        expanded.clear();
-                        frontier.add(resetState);
-                        agentIndex++; // Increment agent index
-                        continue;
-                    } else {
-                        // all agent have reached their goals
-                        continue;
+                // Check if goal state for the current agent
+                if (isGoal.test(state)) {
+                    printSearchStatus(expanded, frontierSize);
+                    return state;
+                }
+
+                ArrayList<State> newChildren = children.get(i);
+                newChildren.removeIf(child -> {
+                    frontier.evaluate(child);
+                    if (child.g + Math.max(child.h, 0) >= bound) {
+                        return true;
+                    }
+                    return !(reopen ? seen.addOrImprove(child) : seen.add(child));
+                });
+                // A child popped before a state later in the batch means that state would not have been popped yet
+                int cut = popped;
+                for (State child : newChildren) {
+                    while (cut > i + 1 && frontier.precedes(child, batch[cut - 1])) {
+                        cut--;
                     }
                 }
-            }
+                for (int j = popped - 1; j >= cut; j--) {
+                    frontier.add(batch[j]);
+                }
+                popped = cut;
 
-            // Expand the state for the current agent
-            for (State child : state.getExpandedStatesSequential(previousPlans, agentIndex)) {
-                if (!frontier.contains(child) && !expanded.contains(child)) {
+                for (State child : newChildren) {
                     frontier.add(child);
+                    if (stateStore != null) {
+                        // Let the expanded state be collected, the child reaches it through the store
+                        child.parent = null;
+                        child.parentIndex = stateIndex;
+                    }
                 }
             }
+            batchSize = popped < fullBatch ? popped : Math.min(2 * batchSize, maxBatchSize);
         }
     }
 
-    private static long startTime = System.nanoTime();
+    // Generates the children of the first count states of batch into children, in parallel on the common fork-join
+    // pool when there is more than one state, and evaluates them for frontier. Children already in seen or not
+    // admitted by filter are skipped without allocating them; seen is only read here, the merge adds the new ones.
+    private static void expand(State[] batch, int count, Frontier frontier, int agentIndex, StateSet seen,
+            ScratchState.Filter filter, ArrayList<ArrayList<State>> children) {
+        children.clear();
+        if (count == 1) {
+            children.add(ScratchState.forThread().expand(batch[0], agentIndex, seen, filter));
+            return;
+        }
+        SearchCounters counters = SearchCounters.current();
+        IntStream.range(0, count).parallel().mapToObj(i -> {
+            SearchCounters.use(counters); // The pool threads count for whichever search they work for
+            ArrayList<State> expansion = ScratchState.forThread().expand(batch[i], agentIndex, seen, filter);
+            for (State child : expansion) {
+                frontier.evaluate(child);
+            }
+            return expansion;
+        }).forEachOrdered(children::add);
+    }
 
-    private static void printSearchStatus(HashSet<State> expanded, Frontier frontier) {
+    private static void printSearchStatus(long expanded, int frontierSize) {
+        SearchCounters counters = SearchCounters.current();
         String statusTemplate = "#Expanded: %,8d, #Frontier: %,8d, #Generated: %,8d, Time: %3.3f s\n%s\n";
-        double elapsedTime = (System.nanoTime() - startTime) / 1_000_000_000d;
-        System.err.format(statusTemplate, expanded.size(), frontier.size(), expanded.size() + frontier.size(),
-                elapsedTime, Memory.stringRep());
+        double elapsedTime = (System.nanoTime() - counters.startTime) / 1_000_000_000d;
+        if (statusLabel.get() != null) {
+            statusTemplate = statusLabel.get() + ": " + statusTemplate;
+        }
+        String memory = Memory.stringRep();
+        if (stateStore != null) {
+            memory += String.format(" [Off-heap: %d records, %4.2f MB]", stateStore.size(),
+                    stateStore.bytes() / (1024 * 1024d));
+        }
+        System.err.format(statusTemplate, expanded, frontierSize, expanded + frontierSize, elapsedTime, memory);
+        long checked = counters.deadlockChecks.sum();
+        if (checked > 0) {
+            long pruned = counters.deadlockPrunes.sum();
+            System.err.format("#Deadlocks: pruned %,d of %,d box moves (%.1f%%)\n", pruned, checked,
+                    100d * pruned / checked);
+        }
+        long full = counters.evaluations.sum();
+        long incremental = counters.incrementalEvaluations.sum();
+        if (full + incremental > 0) {
+            System.err.format("#Heuristic evaluations: %,d full, %,d incremental, %.2f per expansion\n", full,
+                    incremental, (full + incremental) / (double) Math.max(expanded, 1));
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package searchclient;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// The start time and the heuristic and deadlock counters of one search, kept apart from those of other searches
+// running at the same time, such as the members of a portfolio. Each thread counts into the counters of the search it
+// works for: a search installs new ones on its thread with start(), threads it creates inherit them, and pool threads
+// that expand states for it are handed them with use().
+class SearchCounters {
+    private static final InheritableThreadLocal<SearchCounters> current = new InheritableThreadLocal<>() {
+        @Override
+        protected SearchCounters initialValue() {
+            return new SearchCounters();
+        }
+    };
+
+    final long startTime = System.nanoTime();
+    // Full and incremental evaluations of h, see Heuristic.h
+    final LongAdder evaluations = new LongAdder();
+    final LongAdder incrementalEvaluations = new LongAdder();
+    // Box moves checked for deadlocks and pruned as deadlocked, see Deadlocks.isDeadlocked
+    final LongAdder deadlockChecks = new LongAdder();
+    final LongAdder deadlockPrunes = new LongAdder();
+
+    static SearchCounters current() {
+        return current.get();
+    }
+
+    // Installs new counters, starting now, on the calling thread, and returns them.
+    static SearchCounters start() {
+        SearchCounters counters = new SearchCounters();
+        current.set(counters);
+        return counters;
+    }
+
+    static void use(SearchCounters counters) {
+        current.set(counters);
+    }
+
+    // Resets the counts, but not the start time, e.g. before the search for the next agent.
+    void reset() {
+        this.evaluations.reset();
+        this.incrementalEvaluations.reset();
+        this.deadlockChecks.reset();
+        this.deadlockPrunes.reset();
+    }
+}
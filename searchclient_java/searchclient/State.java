@@ -2,35 +2,67 @@ package searchclient;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Random;
 
 public class State {
-    public int[] agentRows;
-    public int[] agentCols;
-    public static Color[] agentColors;
-    public static boolean[][] walls;
-    public char[][] boxes;
-    public static char[][] goals;
-    public static Color[] boxColors;
+    public static Level level;
+    // Cells of the agents followed by the cells of the boxes, indexed as level.cell(row, col). Within a group of
+    // boxes with the same letter the cells are kept in ascending order, so equal states have equal arrays.
+    short[] cells;
     public State parent;
+    public int parentIndex = -1; // Record of the parent in a StateStore, used instead of parent when it is set
     public int g;
-    private int hash = 0;
+    public int h = -1; // Cached heuristic value, see Heuristic.h
+    private long hash; // Zobrist hash of the cells
     public int currentAgentIndex;
     private Action leadingAction; // the action that lead to this state being generated
-    private int[][][][] distances; // Distances between all cells in the grid
 
     // Constructs an initial state.
     public State(int[] agentRows, int[] agentCols, Color[] agentColors, boolean[][] walls,
             char[][] boxes, Color[] boxColors, char[][] goals) {
-        this.agentRows = agentRows;
-        this.agentCols = agentCols;
-        this.agentColors = agentColors;
-        this.walls = walls;
-        this.boxes = boxes;
-        this.boxColors = boxColors;
-        this.goals = goals;
+        State.level = new Level(agentRows.length, agentColors, walls, boxes, boxColors, goals);
+        this.cells = new short[level.numAgents + level.numBoxes];
+        for (int i = 0; i < level.numAgents; i++) {
+            this.cells[i] = (short) level.cell(agentRows[i], agentCols[i]);
+        }
+        // Boxes are sorted by letter, then row-major within a letter, so one pass over the grid places them all
+        int[] next = new int[26]; // Index of the next box of each letter in cells
+        for (int b = level.numBoxes - 1; b >= 0; b--) {
+            next[level.boxLetters[b] - 'A'] = level.numAgents + b;
+        }
+        for (int row = 0; row < boxes.length; row++) {
+            for (int col = 0; col < boxes[row].length; col++) {
+                if (boxes[row][col] != 0) {
+                    this.cells[next[boxes[row][col] - 'A']++] = (short) level.cell(row, col);
+                }
+            }
+        }
+        for (int i = 0; i < level.numAgents; i++) {
+            this.hash ^= level.agentKey(i, this.cells[i]);
+        }
+        for (int b = 0; b < level.numBoxes; b++) {
+            this.hash ^= level.boxKey(level.boxLetters[b], this.boxCell(b));
+        }
+        this.parent = null;
+        this.g = 0;
+    }
+
+    // Constructs a root state with the given agent and box cells, laid out and ordered as in the cells field.
+    State(short[] cells) {
+        this.cells = cells;
+        for (int i = 0; i < level.numAgents; i++) {
+            this.hash ^= level.agentKey(i, this.cells[i]);
+        }
+        for (int b = 0; b < level.numBoxes; b++) {
+            this.hash ^= level.boxKey(level.boxLetters[b], this.boxCell(b));
+        }
+        this.parent = null;
+        this.g = 0;
+    }
+
+    // Constructs a new root state with the same agent and box cells as other.
+    public State(State other) {
+        this.cells = other.cells;
+        this.hash = other.hash;
         this.parent = null;
         this.g = 0;
     }
@@ -38,244 +70,247 @@ public class State {
     // Constructs the state resulting from applying jointAction in parent.
     public State(State parent, Action currentAgentAction, int currentAgentIndex) {
         // Copy parent
-        this.agentRows = Arrays.copyOf(parent.agentRows, parent.agentRows.length);
-        this.agentCols = Arrays.copyOf(parent.agentCols, parent.agentCols.length);
-        this.boxes = new char[parent.boxes.length][];
-        for (int i = 0; i < parent.boxes.length; i++) {
-            this.boxes[i] = Arrays.copyOf(parent.boxes[i], parent.boxes[i].length);
-        }
+        this.cells = parent.cells.clone();
+        this.hash = parent.hash;
         // Set own parameters
         this.parent = parent;
         this.g = parent.g + 1;
         this.currentAgentIndex = currentAgentIndex;
         this.leadingAction = currentAgentAction; // Store the action that lead to this state being generated
         // Apply the action for the current agent
-        char box;
-        switch (currentAgentAction.type) {
-            case NoOp:
-                break;
-            case Move:
-                this.agentRows[currentAgentIndex] += currentAgentAction.agentRowDelta;
-                this.agentCols[currentAgentIndex] += currentAgentAction.agentColDelta;
-                break;
-            case Push:
-                this.agentRows[currentAgentIndex] += currentAgentAction.agentRowDelta;
-                this.agentCols[currentAgentIndex] += currentAgentAction.agentColDelta;
-                box = this.boxes[this.agentRows[currentAgentIndex]][this.agentCols[currentAgentIndex]];
-                this.boxes[this.agentRows[currentAgentIndex]
-                        + currentAgentAction.boxRowDelta][this.agentCols[currentAgentIndex]
-                                + currentAgentAction.boxColDelta] = box;
-                this.boxes[this.agentRows[currentAgentIndex]][this.agentCols[currentAgentIndex]] = 0;
-                break;
-            case Pull:
-                box = this.boxes[this.agentRows[currentAgentIndex] -
-                        currentAgentAction.boxRowDelta][this.agentCols[currentAgentIndex]
-                                - currentAgentAction.boxColDelta];
-                this.boxes[this.agentRows[currentAgentIndex]][this.agentCols[currentAgentIndex]] = box;
-                this.boxes[this.agentRows[currentAgentIndex]
-                        - currentAgentAction.boxRowDelta][this.agentCols[currentAgentIndex]
-                                - currentAgentAction.boxColDelta] = 0;
-                this.agentRows[currentAgentIndex] += currentAgentAction.agentRowDelta;
-                this.agentCols[currentAgentIndex] += currentAgentAction.agentColDelta;
-                break;
-        }
+        this.applyAction(currentAgentIndex, currentAgentAction);
     }
 
-    public boolean isGoalStateForAgent(int agentIndex) {
-        // Check if the agent is at the goal cell
-        char agentChar = (char) ('0' + agentIndex);
+    // Constructs the child of parent by action that result was brought to in place, copying its cells and hash.
+    State(State parent, Action action, int agentIndex, State result) {
+        this.cells = result.cells.clone();
+        this.hash = result.hash;
+        this.parent = parent;
+        this.g = parent.g + 1;
+        this.currentAgentIndex = agentIndex;
+        this.leadingAction = action;
+    }
 
-        // Check if the agent has reached its goal position
-        if (State.goals[this.agentRows[agentIndex]][this.agentCols[agentIndex]] != agentChar) {
-            return false;
-        }
-        // Check if the agent boxes are goal placed
-        for (int row = 1; row < this.goals.length - 1; row++) {
-            for (int col = 1; col < this.goals[row].length - 1; col++) {
-                char goal = this.goals[row][col];
+    // Makes this state a root with the same agent and box cells as other, copying them into this state's own cells
+    // array. Only for scratch states, see apply.
+    void load(State other) {
+        System.arraycopy(other.cells, 0, this.cells, 0, this.cells.length);
+        this.hash = other.hash;
+        this.g = other.g;
+        this.h = -1;
+        this.currentAgentIndex = other.currentAgentIndex;
+    }
 
-                if ('A' <= goal && goal <= 'Z' && this.boxes[row][col] != goal
-                        && this.boxColors[goal - 'A'] == this.agentColors[agentIndex]) {
-                    return false;
-                }
-            }
+    // Applies action for agent to this state in place if it is applicable, and returns whether it was. Since
+    // applying action.inverse() afterwards restores the cells and the hash, this lets searches walk the state space
+    // on a single scratch state. Only for states that own their cells array and are not kept in any set.
+    boolean apply(int agent, Action action) {
+        if (!this.isApplicable(agent, action)) {
+            return false;
         }
+        this.applyAction(agent, action);
         return true;
     }
 
-    public Action resolveConflicts(Action[][] previousPlans, Action currentAgentAction) {
-        for (int i = previousPlans.length - 1; i >= 0; i--) {
-            // Check if the previous action is null or if this.g is out of bounds
-            if (previousPlans[i] == null || this.g >= previousPlans[i].length) {
-                // If it's null or out of bounds, skip this iteration and go to the next one
-                continue;
-            }
-            // Check if there is a conflict between the current action and the previous
-            // action
-            if (conflicts(currentAgentAction, previousPlans[i][this.g], this.currentAgentIndex, i)) {
-                // If there is a conflict, concede to the previous agent's plan by making this
-                // action a NoOp
-                return Action.NoOp;
-            }
-        }
-        // If no conflict was found with any of the previous plans, the action is valid
-        return currentAgentAction;
-
+    // Undoes action, which agent has just applied to this state with apply.
+    void undo(int agent, Action action) {
+        this.applyAction(agent, action.inverse());
     }
 
-    int[] calculatePositions(Action action, int agentRow, int agentCol) {
-        int agentDestinationRow = -1, agentDestinationCol = -1, boxRow = -1, boxCol = -1;
+    // Applies action for agent, which must be applicable.
+    void applyAction(int agent, Action action) {
+        int agentCell = this.cells[agent];
+        int agentDestination = agentCell + level.agentDeltas[action.ordinal()];
+        int boxDelta = level.boxDeltas[action.ordinal()];
         switch (action.type) {
             case NoOp:
-                agentDestinationRow = agentRow;
-                agentDestinationCol = agentCol;
-                boxRow = -1;
-                boxCol = -1;
                 break;
             case Move:
-                agentDestinationRow = agentRow + action.agentRowDelta;
-                agentDestinationCol = agentCol + action.agentColDelta;
-                boxRow = -1;
-                boxCol = -1;
+                this.moveAgent(agent, agentDestination);
                 break;
             case Push:
-                agentDestinationRow = agentRow + action.agentRowDelta;
-                agentDestinationCol = agentCol + action.agentColDelta;
-                boxRow = agentDestinationRow + action.boxRowDelta;
-                boxCol = agentDestinationCol + action.boxColDelta;
+                this.moveBox(agentDestination, agentDestination + boxDelta);
+                this.moveAgent(agent, agentDestination);
                 break;
             case Pull:
-                agentDestinationRow = agentRow + action.agentRowDelta;
-                agentDestinationCol = agentCol + action.agentColDelta;
-                boxRow = agentRow - action.boxRowDelta;
-                boxCol = agentCol - action.boxColDelta;
+                this.moveBox(agentCell - boxDelta, agentCell);
+                this.moveAgent(agent, agentDestination);
                 break;
         }
-        return new int[] { agentDestinationRow, agentDestinationCol, boxRow, boxCol };
     }
 
-    private boolean conflicts(Action action1, Action action2, int agentIndex1, int agentIndex2) { // Helper function to
-                                                                                                  // check if two
-                                                                                                  // actions conflict
-        int agent1Row = this.agentRows[agentIndex1];
-        int agent1Col = this.agentCols[agentIndex1];
-        int agent2Row = this.agentRows[agentIndex2];
-        int agent2Col = this.agentCols[agentIndex2];
-
-        int[] positions1 = calculatePositions(action1, agent1Row, agent1Col);
-        int[] positions2 = calculatePositions(action2, agent2Row, agent2Col);
+    void moveAgent(int agent, int to) {
+        this.hash ^= level.agentKey(agent, this.cells[agent]) ^ level.agentKey(agent, to);
+        this.cells[agent] = (short) to;
+    }
 
-        // Check for conflicts
-        if (action1.type == ActionType.NoOp || action2.type == ActionType.NoOp) {
-            return false; // No conflict if either action is NoOp
+    // Moves the box at cell from to cell to, keeping the cells of its letter group sorted.
+    void moveBox(int from, int to) {
+        int b = this.boxIndexAt(from);
+        char letter = level.boxLetters[b];
+        this.hash ^= level.boxKey(letter, from) ^ level.boxKey(letter, to);
+        int start = level.numAgents + level.boxGroupStart[b];
+        int end = level.numAgents + level.boxGroupEnd[b];
+        int i = level.numAgents + b;
+        while (i > start && this.cells[i - 1] > to) {
+            this.cells[i] = this.cells[i - 1];
+            i--;
         }
-        if (action1.type == ActionType.Move && action2.type == ActionType.Move && positions1[0] == positions2[0]
-                && positions1[1] == positions2[1]) {
-            return true; // Both agents attempt to occupy the same cell
+        while (i < end - 1 && this.cells[i + 1] < to) {
+            this.cells[i] = this.cells[i + 1];
+            i++;
         }
-        if (action1.type == ActionType.Pull && action2.type == ActionType.Pull && positions1[2] == positions2[2]
-                && positions1[3] == positions2[3]) {
-            return true; // Both agents attempt to pull the same box
+        this.cells[i] = (short) to;
+    }
+
+    public int agentCell(int agent) {
+        return this.cells[agent];
+    }
+
+    public int agentRow(int agent) {
+        return level.row(this.cells[agent]);
+    }
+
+    public int agentCol(int agent) {
+        return level.col(this.cells[agent]);
+    }
+
+    public int boxCell(int box) {
+        return this.cells[level.numAgents + box];
+    }
+
+    // Returns the index of the box at cell, or -1 if there is none.
+    public int boxIndexAt(int cell) {
+        for (int b = 0; b < level.numBoxes; b++) {
+            if (this.cells[level.numAgents + b] == cell) {
+                return b;
+            }
         }
-        if (action1.type == ActionType.Push && action2.type == ActionType.Push && positions1[0] == positions2[0]
-                && positions1[1] == positions2[1]) {
-            return true; // Both agents attempt to push the same box
+        return -1;
+    }
+
+    // Returns the letter of the box at (row, col), or 0 if there is none.
+    public char boxAt(int row, int col) {
+        return this.boxLetterAt(level.cell(row, col));
+    }
+
+    // Returns the letter of the box at cell, or 0 if there is none.
+    char boxLetterAt(int cell) {
+        int b = this.boxIndexAt(cell);
+        return b < 0 ? 0 : level.boxLetters[b];
+    }
+
+    // Whether a box with the given letter is at cell.
+    public boolean hasBoxAt(char letter, int cell) {
+        for (int b = 0; b < level.numBoxes; b++) {
+            if (level.boxLetters[b] == letter && this.cells[level.numAgents + b] == cell) {
+                return true;
+            }
         }
-        if (action1.type == ActionType.Pull && action2.type == ActionType.Push
-                && (positions1[2] == positions2[0] && positions1[3] == positions2[1])) {
-            return true; // First agent tries to pull a box that the other tries to push
+        return false;
+    }
+
+    public boolean isGoalStateForAgent(int agentIndex) {
+        // Check if the agent has reached its goal position, if it has one
+        int agentGoal = level.agentGoalCells[agentIndex];
+        if (agentGoal >= 0 && this.cells[agentIndex] != agentGoal) {
+            return false;
         }
-        if (action1.type == ActionType.Push && action2.type == ActionType.Pull
-                && (positions1[0] == positions2[2] && positions1[1] == positions2[3])) {
-            return true; // First agent tries to push a box that the other tries to pull
+        // Check if the agent boxes are goal placed
+        for (int i = 0; i < level.boxGoalCells.length; i++) {
+            char goal = level.boxGoalLetters[i];
+            if (level.boxColors[goal - 'A'] == level.agentColors[agentIndex]
+                    && !this.hasBoxAt(goal, level.boxGoalCells[i])) {
+                return false;
+            }
         }
-        if (action1.type == ActionType.Move && action2.type == ActionType.Push
-                && (positions1[0] == positions2[2] && positions1[1] == positions2[3])) {
-            return true; // An agent tries to move where a box is being pushed in
+        return true;
+    }
+
+    // Whether agent doing action and other doing otherAction at the same time in this state, where both actions are
+    // applicable, move something into the same cell or move the same box, which the server rejects.
+    boolean collides(int agent, Action action, int other, Action otherAction) {
+        int destination = this.cells[agent] + level.agentDeltas[action.ordinal()];
+        int otherDestination = this.cells[other] + level.agentDeltas[otherAction.ordinal()];
+        int box = action.type == ActionType.Push || action.type == ActionType.Pull ? this.movedBoxCell(agent, action)
+                : -1;
+        int otherBox = otherAction.type == ActionType.Push || otherAction.type == ActionType.Pull
+                ? this.movedBoxCell(other, otherAction) : -1;
+        if (destination == otherDestination || destination == otherBox || box == otherDestination
+                || (box >= 0 && box == otherBox)) {
+            return true;
         }
+        return box >= 0 && otherBox >= 0 && this.boxSourceCell(agent, action) == this.boxSourceCell(other, otherAction);
+    }
 
-        return false;
+    // The cell the box moved by agent's Push or Pull action is on in this state.
+    private int boxSourceCell(int agent, Action action) {
+        int agentCell = this.cells[agent];
+        if (action.type == ActionType.Push) {
+            return agentCell + level.agentDeltas[action.ordinal()];
+        }
+        return agentCell - level.boxDeltas[action.ordinal()];
     }
 
     public ArrayList<State> getExpandedStatesSequential(Action[][] previousPlans, int currentAgentIndex) {
-        ArrayList<State> expandedStates = new ArrayList<>(16);
-        Action currentAgentAction = Action.NoOp;
-
         // Generate child states for the current agent ONLY
-        for (Action action : Action.values()) {
-            if (this.isApplicable(currentAgentIndex, action)) {
-                currentAgentAction = action;
-                State childState = new State(this, currentAgentAction, currentAgentIndex);
-                expandedStates.add(childState);
-            }
+        return ScratchState.forThread().expand(this, currentAgentIndex, null);
+    }
+
+    // The cell a box ends up on when agent applies the Push or Pull action in this state.
+    int movedBoxCell(int agent, Action action) {
+        int agentCell = this.cells[agent];
+        if (action.type == ActionType.Push) {
+            return agentCell + level.agentDeltas[action.ordinal()] + level.boxDeltas[action.ordinal()];
         }
+        return agentCell;
+    }
 
-        return expandedStates;
+    boolean isApplicable(int agent, Action action) {
+        return (level.feasibleActions[this.cells[agent]] & 1 << action.ordinal()) != 0
+                && this.isUnblocked(agent, action);
     }
 
-    private boolean isApplicable(int agent, Action action) {
-        int agentRow = this.agentRows[agent];
-        int agentCol = this.agentCols[agent];
-        Color agentColor = State.agentColors[agent];
-        int boxRow;
-        int boxCol;
-        Color boxColor;
+    // Whether action is applicable for agent, given that it is in level.feasibleActions of the agent's cell, so that
+    // only the agents and boxes have to be checked.
+    boolean isUnblocked(int agent, Action action) {
+        int agentCell = this.cells[agent];
+        int destination = agentCell + level.agentDeltas[action.ordinal()];
         char box;
-        int destinationRow;
-        int destinationCol;
         switch (action.type) {
             case NoOp:
                 return true;
-
             case Move:
-                destinationRow = agentRow + action.agentRowDelta;
-                destinationCol = agentCol + action.agentColDelta;
-                return this.cellIsFree(destinationRow, destinationCol);
+                return this.isUnoccupied(destination);
             case Push:
-                destinationRow = agentRow + action.agentRowDelta;
-                destinationCol = agentCol + action.agentColDelta;
-                box = this.boxes[destinationRow][destinationCol];
-                if (box == 0) {
-                    return false;
-                }
-                boxColor = State.boxColors[box - 'A'];
-                if (agentColor != boxColor) {
-                    return false;
-                }
-                boxRow = destinationRow + action.boxRowDelta;
-                boxCol = destinationCol + action.boxColDelta;
-                return this.cellIsFree(boxRow, boxCol);
+                box = this.boxLetterAt(destination);
+                return box != 0 && level.boxColors[box - 'A'] == level.agentColors[agent]
+                        && this.isUnoccupied(destination + level.boxDeltas[action.ordinal()]);
             case Pull:
-                destinationRow = agentRow + action.agentRowDelta;
-                destinationCol = agentCol + action.agentColDelta;
-                boxRow = agentRow - action.boxRowDelta;
-                boxCol = agentCol - action.boxColDelta;
-                box = this.boxes[boxRow][boxCol];
-                if (box == 0) {
-                    return false;
-                }
-                boxColor = State.boxColors[box - 'A'];
-                if (agentColor != boxColor) {
-                    return false;
-                }
-                return this.cellIsFree(destinationRow, destinationCol);
+                box = this.boxLetterAt(agentCell - level.boxDeltas[action.ordinal()]);
+                return box != 0 && level.boxColors[box - 'A'] == level.agentColors[agent]
+                        && this.isUnoccupied(destination);
         }
 
         // Unreachable:
         return false;
     }
 
-    private boolean cellIsFree(int row, int col) {
-        return !State.walls[row][col] && this.boxes[row][col] == 0 && this.agentAt(row, col) == 0;
-    }
-
-    private char agentAt(int row, int col) {
-        for (int i = 0; i < this.agentRows.length; i++) {
-            if (this.agentRows[i] == row && this.agentCols[i] == col) {
-                return (char) ('0' + i);
+    // Whether no agent or box is on cell, which must not be a wall.
+    boolean isUnoccupied(int cell) {
+        if (this.boxIndexAt(cell) >= 0) {
+            return false;
+        }
+        for (int i = 0; i < level.numAgents; i++) {
+            if (this.cells[i] == cell) {
+                return false;
             }
         }
-        return 0;
+        return true;
+    }
+
+    public Action getLeadingAction() {
+        return this.leadingAction;
     }
 
     public Action[] extractPlanForCurrentAgent() {
@@ -291,28 +326,14 @@ public class State {
         return plan;
     }
 
+    // The full 64-bit Zobrist hash, for tables keyed on state fingerprints.
+    public long fingerprint() {
+        return this.hash;
+    }
+
     @Override
     public int hashCode() {
-        if (this.hash == 0) {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + Arrays.hashCode(this.agentColors);
-            result = prime * result + Arrays.hashCode(this.boxColors);
-            result = prime * result + Arrays.deepHashCode(this.walls);
-            result = prime * result + Arrays.deepHashCode(this.goals);
-            result = prime * result + Arrays.hashCode(this.agentRows);
-            result = prime * result + Arrays.hashCode(this.agentCols);
-            for (int row = 0; row < this.boxes.length; ++row) {
-                for (int col = 0; col < this.boxes[row].length; ++col) {
-                    char c = this.boxes[row][col];
-                    if (c != 0) {
-                        result = prime * result + (row * this.boxes[row].length + col) * c;
-                    }
-                }
-            }
-            this.hash = result;
-        }
-        return this.hash;
+        return (int) (this.hash ^ (this.hash >>> 32));
     }
 
     @Override
@@ -323,78 +344,10 @@ public class State {
         if (obj == null) {
             return false;
         }
-        if (this.getClass() != obj.getClass()) {
-            return false;
+        if (!(obj instanceof State)) {
+            return false; // A ScratchState equals the State with the same cells
         }
         State other = (State) obj;
-        return Arrays.equals(this.agentRows, other.agentRows) &&
-                Arrays.equals(this.agentCols, other.agentCols) &&
-                Arrays.equals(this.agentColors, other.agentColors) &&
-                Arrays.deepEquals(this.walls, other.walls) &&
-                Arrays.deepEquals(this.boxes, other.boxes) &&
-                Arrays.equals(this.boxColors, other.boxColors) &&
-                Arrays.deepEquals(this.goals, other.goals);
-    }
-
-    public int[][][][] getDistances() {
-        if (this.distances == null) {
-            this.computeDistances();
-        }
-        return this.distances;
-    }
-
-    private void computeDistances() {
-        int rows = walls.length;
-        int cols = walls[0].length;
-        distances = new int[rows][cols][rows][cols];
-
-        for (int startRow = 0; startRow < rows; startRow++) {
-            for (int startCol = 0; startCol < cols; startCol++) {
-                // Initialize all distances to a large number
-                for (int endRow = 0; endRow < rows; endRow++) {
-                    for (int endCol = 0; endCol < cols; endCol++) {
-                        distances[startRow][startCol][endRow][endCol] = Integer.MAX_VALUE;
-                    }
-                }
-
-                // Use BFS to compute the shortest distances from (startRow, startCol) to all
-                // other cells
-
-                bfs(startRow, startCol);
-            }
-        }
-    }
-
-    private void bfs(int startRow, int startCol) {
-        int rows = walls.length;
-        int cols = walls[0].length;
-
-        boolean[][] visited = new boolean[rows][cols];
-        visited[startRow][startCol] = true;
-
-        Queue<int[]> queue = new LinkedList<>();
-        queue.add(new int[] { startRow, startCol, 0 }); // The third element of the array is the distance from the start
-        // cell
-
-        while (!queue.isEmpty()) {
-            int[] cell = queue.poll();
-            int row = cell[0];
-            int col = cell[1];
-            int distance = cell[2];
-
-            // Update the distance from the start cell to this cell
-            distances[startRow][startCol][row][col] = distance;
-
-            for (int[] dir : new int[][] { { -1, 0 }, { 1, 0 }, { 0, -1 }, { 0, 1 } }) {
-                int newRow = row + dir[0];
-                int newCol = col + dir[1];
-
-                if (newRow >= 0 && newRow < rows && newCol >= 0 && newCol < cols &&
-                        !walls[newRow][newCol] && !visited[newRow][newCol]) {
-                    visited[newRow][newCol] = true;
-                    queue.add(new int[] { newRow, newCol, distance + 1 });
-                }
-            }
-        }
+        return this.hash == other.hash && Arrays.equals(this.cells, other.cells);
     }
-}
\ No newline at end of file
+}
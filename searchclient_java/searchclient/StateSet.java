@@ -0,0 +1,227 @@
+package searchclient;
+
+import java.util.Arrays;
+
+// Set of states keyed on their 64-bit Zobrist fingerprint, stored in an open-addressed long[] with linear probing.
+// Without verification two states with the same fingerprint are taken to be equal, which costs about 8-21 bytes
+// per state depending on the load. With verification a parallel State[] is kept and equal fingerprints are
+// confirmed with State.equals, so colliding states are kept apart. With costs the lowest g each state was reached
+// with is kept as well, for searches that must reopen states found again on a cheaper path.
+public class StateSet {
+    private static final long EMPTY = 0;
+    private static final long ZERO_KEY = 0x9E3779B97F4A7C15L; // Stands in for a fingerprint of 0
+    private static final double MAX_LOAD = 0.75;
+
+    private final boolean verify;
+    private final boolean withCosts;
+    private long[] keys;
+    private State[] states;
+    private int[] costs;
+    private int size;
+    private int mask;
+    private int shift;
+
+    public StateSet(int expectedSize, boolean verify, boolean withCosts) {
+        this.verify = verify;
+        this.withCosts = withCosts;
+        int capacity = 16;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity <<= 1;
+        }
+        this.allocate(capacity);
+    }
+
+    public StateSet(int expectedSize, boolean verify) {
+        this(expectedSize, verify, false);
+    }
+
+    public StateSet() {
+        this(65536, false, false);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.states = this.verify ? new State[capacity] : null;
+        this.costs = this.withCosts ? new int[capacity] : null;
+        this.mask = capacity - 1;
+        this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        this.size = 0;
+    }
+
+    private static long key(State state) {
+        long fingerprint = state.fingerprint();
+        return fingerprint == EMPTY ? ZERO_KEY : fingerprint;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> this.shift);
+    }
+
+    // Returns the slot holding state, or the empty slot where it would be inserted.
+    private int find(State state, long key) {
+        int i = this.slot(key);
+        while (this.keys[i] != EMPTY) {
+            if (this.keys[i] == key && (!this.verify || this.states[i].equals(state))) {
+                return i;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return i;
+    }
+
+    // Adds state to the set, returning false if it was already seen.
+    public boolean add(State state) {
+        long key = key(state);
+        int i = this.find(state, key);
+        if (this.keys[i] != EMPTY) {
+            return false;
+        }
+        this.insert(i, key, state);
+        if (++this.size > this.keys.length * MAX_LOAD) {
+            this.grow();
+        }
+        return true;
+    }
+
+    // Adds a key computed by the caller instead of a state's fingerprint, for searches that tell states apart by more
+    // than their cells, returning false if it was already seen. Only for sets without verification or costs.
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            key = ZERO_KEY;
+        }
+        int i = this.find(null, key);
+        if (this.keys[i] != EMPTY) {
+            return false;
+        }
+        this.keys[i] = key;
+        if (++this.size > this.keys.length * MAX_LOAD) {
+            this.grow();
+        }
+        return true;
+    }
+
+    // Adds state to the set, or lowers the g kept for it. Returns true if state was not seen before or is now reached
+    // with a lower g, so that it must be (re)expanded. Only for sets with costs.
+    public boolean addOrImprove(State state) {
+        long key = key(state);
+        int i = this.find(state, key);
+        if (this.keys[i] != EMPTY) {
+            if (state.g >= this.costs[i]) {
+                return false;
+            }
+            this.costs[i] = state.g;
+            if (this.verify) {
+                this.states[i] = state;
+            }
+            return true;
+        }
+        this.insert(i, key, state);
+        if (++this.size > this.keys.length * MAX_LOAD) {
+            this.grow();
+        }
+        return true;
+    }
+
+    private void insert(int i, long key, State state) {
+        this.keys[i] = key;
+        if (this.verify) {
+            this.states[i] = state;
+        }
+        if (this.withCosts) {
+            this.costs[i] = state.g;
+        }
+    }
+
+    // Returns the state in the set that equals state, or null if there is none. Only for sets with verification.
+    public State get(State state) {
+        long key = key(state);
+        int i = this.find(state, key);
+        return this.keys[i] == EMPTY ? null : this.states[i];
+    }
+
+    // Returns the lowest g kept for state, or -1 if it is not in the set. Only for sets with costs.
+    public int cost(State state) {
+        long key = key(state);
+        int i = this.find(state, key);
+        return this.keys[i] == EMPTY ? -1 : this.costs[i];
+    }
+
+    public boolean contains(State state) {
+        long key = key(state);
+        return this.keys[this.find(state, key)] != EMPTY;
+    }
+
+    // Whether state is in the set with a g of at most g, or at all for sets without costs.
+    public boolean containsWithin(State state, int g) {
+        long key = key(state);
+        int i = this.find(state, key);
+        return this.keys[i] != EMPTY && (!this.withCosts || this.costs[i] <= g);
+    }
+
+    public boolean remove(State state) {
+        long key = key(state);
+        int i = this.find(state, key);
+        if (this.keys[i] == EMPTY) {
+            return false;
+        }
+        // Shift later entries of the probe sequence back into the freed slot
+        int free = i;
+        int j = (i + 1) & this.mask;
+        while (this.keys[j] != EMPTY) {
+            int home = this.slot(this.keys[j]);
+            if (((j - home) & this.mask) >= ((j - free) & this.mask)) {
+                this.keys[free] = this.keys[j];
+                if (this.verify) {
+                    this.states[free] = this.states[j];
+                }
+                if (this.withCosts) {
+                    this.costs[free] = this.costs[j];
+                }
+                free = j;
+            }
+            j = (j + 1) & this.mask;
+        }
+        this.keys[free] = EMPTY;
+        if (this.verify) {
+            this.states[free] = null;
+        }
+        this.size--;
+        return true;
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        State[] oldStates = this.states;
+        int[] oldCosts = this.costs;
+        this.allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int j = this.slot(key);
+                while (this.keys[j] != EMPTY) {
+                    j = (j + 1) & this.mask;
+                }
+                this.keys[j] = key;
+                if (this.verify) {
+                    this.states[j] = oldStates[i];
+                }
+                if (this.withCosts) {
+                    this.costs[j] = oldCosts[i];
+                }
+                this.size++;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, EMPTY);
+        if (this.verify) {
+            Arrays.fill(this.states, null);
+        }
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+}
@@ -0,0 +1,111 @@
+package searchclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+// Append-only store of expanded states kept outside the Java heap, either in direct buffers or in a memory-mapped
+// file. Each record holds the index of the parent record, the leading action and the packed cells of the state,
+// so once a state is stored its children only need the record index, and the State object can be collected.
+public class StateStore {
+    private static final int SEGMENT_SIZE = 1 << 26;
+    private static final int PARENT_OFFSET = 0;
+    private static final int ACTION_OFFSET = 4;
+    private static final int CELLS_OFFSET = 5;
+
+    private static final Action[] ACTIONS = Action.values();
+
+    private final int recordSize;
+    private final int recordsPerSegment;
+    private final ArrayList<ByteBuffer> segments = new ArrayList<>();
+    private final FileChannel channel;
+    private int size = 0;
+
+    // Stores records in direct buffers.
+    public StateStore() {
+        this.recordSize = CELLS_OFFSET + 2 * (State.level.numAgents + State.level.numBoxes);
+        this.recordsPerSegment = SEGMENT_SIZE / this.recordSize;
+        this.channel = null;
+    }
+
+    // Stores records in a temporary file in directory, mapped into memory a segment at a time.
+    public StateStore(File directory)
+            throws IOException {
+        this.recordSize = CELLS_OFFSET + 2 * (State.level.numAgents + State.level.numBoxes);
+        this.recordsPerSegment = SEGMENT_SIZE / this.recordSize;
+        File file = File.createTempFile("searchclient", ".states", directory);
+        file.deleteOnExit();
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    // Appends a record for state, whose parent record is parentIndex (-1 for a root). Returns the new record index.
+    public int append(State state, int parentIndex) {
+        int segment = this.size / this.recordsPerSegment;
+        if (segment == this.segments.size()) {
+            this.segments.add(this.allocate(segment));
+        }
+        ByteBuffer buffer = this.segments.get(segment);
+        int offset = (this.size % this.recordsPerSegment) * this.recordSize;
+        Action action = state.getLeadingAction();
+        buffer.putInt(offset + PARENT_OFFSET, parentIndex);
+        buffer.put(offset + ACTION_OFFSET, (byte) (action == null ? -1 : action.ordinal()));
+        for (int i = 0; i < state.cells.length; i++) {
+            buffer.putShort(offset + CELLS_OFFSET + 2 * i, state.cells[i]);
+        }
+        return this.size++;
+    }
+
+    private ByteBuffer allocate(int segment) {
+        int capacity = this.recordsPerSegment * this.recordSize;
+        if (this.channel == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        try {
+            return this.channel.map(FileChannel.MapMode.READ_WRITE, (long) segment * capacity, capacity);
+        } catch (IOException ex) {
+            throw new OutOfMemoryError("Unable to map state store segment: " + ex.getMessage());
+        }
+    }
+
+    public int parentIndex(int index) {
+        return this.segments.get(index / this.recordsPerSegment)
+                .getInt((index % this.recordsPerSegment) * this.recordSize + PARENT_OFFSET);
+    }
+
+    public Action leadingAction(int index) {
+        byte ordinal = this.segments.get(index / this.recordsPerSegment)
+                .get((index % this.recordsPerSegment) * this.recordSize + ACTION_OFFSET);
+        return ordinal < 0 ? null : ACTIONS[ordinal];
+    }
+
+    // Extracts the plan leading to state, following record indices from state's parent record back to the root.
+    public Action[] extractPlan(State state) {
+        Action[] plan = new Action[state.g];
+        if (state.g == 0) {
+            return plan;
+        }
+        plan[state.g - 1] = state.getLeadingAction();
+        int index = state.parentIndex;
+        for (int i = state.g - 2; i >= 0; i--) {
+            plan[i] = this.leadingAction(index);
+            index = this.parentIndex(index);
+        }
+        return plan;
+    }
+
+    // Drops all records, keeping the allocated segments for reuse.
+    public void clear() {
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public long bytes() {
+        return (long) this.size * this.recordSize;
+    }
+}
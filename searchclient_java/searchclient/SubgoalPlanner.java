@@ -0,0 +1,212 @@
+package searchclient;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+// Plans one agent of the sequential search goal by goal instead of for all its goals at once. Each box goal of the
+// agent's color is a subgoal of its own, solved by a small best-first search for a state with a box of the goal's
+// letter on it, during which the boxes on the goals filled before stay where they are. The agent's own goal comes
+// last. Goals are ordered so that filling one never cuts the goals still to be filled off from each other, which puts
+// goals at the end of dead-end corridors before the ones nearer their entrance. Each search starts from the state the
+// previous one ended in, so the states chain into a single plan. If a subgoal cannot be solved within
+// SearchClient.subgoalExpansions expansions, the agent is planned again with the joint search for all its goals, from
+// where it started.
+public class SubgoalPlanner {
+    private final Level level;
+    private final int agent;
+    private final int[] goals; // Indices into Level.boxGoalCells of the agent's box goals, in the order to fill them
+    private final int[] weights = SearchClient.bestFirstWeights; // Of g and h, as in the strategy chosen
+
+    public SubgoalPlanner(int agent) {
+        this.level = State.level;
+        this.agent = agent;
+        this.goals = this.order();
+    }
+
+    // The box goals of the agent's color, ordered so that filling each leaves the goals after it connected, preferring
+    // goals with fewer free neighbours, which lie deeper in dead ends.
+    private int[] order() {
+        ArrayList<Integer> remaining = new ArrayList<>();
+        for (int i = 0; i < this.level.boxGoalCells.length; i++) {
+            if (this.level.boxColors[this.level.boxGoalLetters[i] - 'A'] == this.level.agentColors[this.agent]) {
+                remaining.add(i);
+            }
+        }
+        boolean[] filled = new boolean[this.level.rows * this.level.cols];
+        int[] order = new int[remaining.size()];
+        for (int k = 0; k < order.length; k++) {
+            int best = -1;
+            int bestOpen = Integer.MAX_VALUE;
+            for (int i : remaining) {
+                int cell = this.level.boxGoalCells[i];
+                int open = this.openNeighbours(cell, filled);
+                if (open < bestOpen && this.keepsConnected(cell, remaining, filled)) {
+                    best = i;
+                    bestOpen = open;
+                }
+            }
+            if (best < 0) {
+                best = remaining.get(0); // Every goal cuts others off, so no order avoids it
+            }
+            remaining.remove(Integer.valueOf(best));
+            filled[this.level.boxGoalCells[best]] = true;
+            order[k] = best;
+        }
+        return order;
+    }
+
+    private int openNeighbours(int cell, boolean[] filled) {
+        int open = 0;
+        for (int d = 0; d < 4; d++) {
+            int next = this.level.neighbours[4 * cell + d];
+            open += next >= 0 && !filled[next] ? 1 : 0;
+        }
+        return open;
+    }
+
+    // Whether the goals in remaining other than the one on cell, and the agent's goal, are still connected with the
+    // filled goal cells and cell treated as walls.
+    private boolean keepsConnected(int cell, ArrayList<Integer> remaining, boolean[] filled) {
+        ArrayList<Integer> targets = new ArrayList<>();
+        for (int i : remaining) {
+            if (this.level.boxGoalCells[i] != cell) {
+                targets.add(this.level.boxGoalCells[i]);
+            }
+        }
+        int agentGoal = this.level.agentGoalCells[this.agent];
+        if (agentGoal >= 0 && agentGoal != cell && !filled[agentGoal]) {
+            targets.add(agentGoal);
+        }
+        if (targets.isEmpty()) {
+            return true;
+        }
+        boolean[] reached = new boolean[filled.length];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        reached[targets.get(0)] = true;
+        queue.add(targets.get(0));
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            for (int d = 0; d < 4; d++) {
+                int next = this.level.neighbours[4 * current + d];
+                if (next >= 0 && next != cell && !filled[next] && !reached[next]) {
+                    reached[next] = true;
+                    queue.add(next);
+                }
+            }
+        }
+        for (int target : targets) {
+            if (!reached[target]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns a state reached from root in which the agent has reached all its goals, or null if there is none.
+    public State search(State root) {
+        State state = root;
+        for (int k = 0; k <= this.goals.length; k++) {
+            int goal = k < this.goals.length ? this.goals[k] : -1;
+            if (goal < 0 && this.level.agentGoalCells[this.agent] < 0) {
+                break;
+            }
+            int solved = k;
+            SubgoalHeuristic heuristic = new SubgoalHeuristic(state, solved, goal);
+            state.h = -1; // Evaluated by the previous subgoal's heuristic
+            int cell = goal < 0 ? this.level.agentGoalCells[this.agent] : this.level.boxGoalCells[goal];
+            SearchClient.statusLabel.set(String.format("Agent %d, goal %c at (%d,%d)", this.agent,
+                    goal < 0 ? (char) ('0' + this.agent) : this.level.boxGoalLetters[goal], this.level.row(cell),
+                    this.level.col(cell)));
+            State reached = SearchClient.searchAgent(state, SearchClient.bestFirst(heuristic), this.agent,
+                    heuristic::isGoal, heuristic::admits, Integer.MAX_VALUE, SearchClient.subgoalExpansions);
+            SearchClient.statusLabel.remove();
+            if (reached == null) {
+                System.err.format("Agent %d cannot fill goal %d of %d, falling back to joint search.\n", this.agent,
+                        k + 1, this.goals.length);
+                root.h = -1;
+                Frontier frontier = SearchClient.bestFirst(SearchClient.heuristic(root, this.weights[0],
+                        this.weights[1]));
+                return SearchClient.searchAgent(root, frontier, this.agent, s -> s.isGoalStateForAgent(this.agent),
+                        null, Integer.MAX_VALUE, Long.MAX_VALUE);
+            }
+            state = reached;
+        }
+        return state;
+    }
+
+    // Goal test, successor filter and heuristic of the search for one subgoal. The boxes on the goals filled before
+    // are locked in place. The heuristic is the distance of the nearest box that can fill the goal to it, plus the
+    // agent's distance to that box, or for the agent's own goal, its distance to it.
+    private class SubgoalHeuristic
+            extends Heuristic {
+        private final int goal; // Index into Level.boxGoalCells, or -1 for the agent's goal
+        private final boolean[] locked; // Goal cells filled before
+
+        SubgoalHeuristic(State root, int solved, int goal) {
+            super(root);
+            this.goal = goal;
+            this.locked = new boolean[level.rows * level.cols];
+            for (int k = 0; k < solved; k++) {
+                this.locked[level.boxGoalCells[goals[k]]] = true;
+            }
+        }
+
+        boolean isGoal(State s) {
+            if (this.goal < 0) {
+                return s.agentCell(agent) == level.agentGoalCells[agent];
+            }
+            return s.hasBoxAt(level.boxGoalLetters[this.goal], level.boxGoalCells[this.goal]);
+        }
+
+        // Whether action in parent leaves the locked boxes where they are.
+        boolean admits(State parent, Action action, State child) {
+            int from = parent.agentCell(agent);
+            switch (action.type) {
+                case Push:
+                    return !this.locked[from + level.agentDeltas[action.ordinal()]];
+                case Pull:
+                    return !this.locked[from - level.boxDeltas[action.ordinal()]];
+                default:
+                    return true;
+            }
+        }
+
+        @Override
+        public int H(State s) {
+            if (this.goal < 0) {
+                return this.reachable(this.distances.distance(s.agentCell(agent), level.agentGoalCells[agent]));
+            }
+            char letter = level.boxGoalLetters[this.goal];
+            int cell = level.boxGoalCells[this.goal];
+            if (s.hasBoxAt(letter, cell)) {
+                return 0;
+            }
+            int best = DistanceMap.UNREACHABLE;
+            for (int b = 0; b < level.numBoxes; b++) {
+                if (level.boxLetters[b] != letter || this.locked[s.boxCell(b)]) {
+                    continue;
+                }
+                int toGoal = this.distances.distance(s.boxCell(b), cell);
+                int toBox = this.distances.distance(s.agentCell(agent), s.boxCell(b));
+                if (toGoal != DistanceMap.UNREACHABLE && toBox != DistanceMap.UNREACHABLE) {
+                    best = Math.min(best, toGoal + toBox);
+                }
+            }
+            return this.reachable(best);
+        }
+
+        private int reachable(int distance) {
+            return distance == DistanceMap.UNREACHABLE ? 0 : distance;
+        }
+
+        @Override
+        protected int incrementalH(State parent, State child) {
+            return this.H(child);
+        }
+
+        @Override
+        public int f(State s) {
+            return weights[0] * s.g + weights[1] * this.h(s);
+        }
+    }
+}